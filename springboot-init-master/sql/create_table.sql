@@ -66,6 +66,10 @@ create index idx_title
 create index idx_userId
     on question (userId);
 
+-- 增量同步按更新时间查询
+create index idx_updateTime
+    on question (updateTime);
+
 
 
 
@@ -133,3 +137,20 @@ create table thumb
         unique (userId, questionId)
 );
 
+
+-- 点赞数增量事务标记：与点赞落库在同一事务中写入，增量刷盘时在同一事务中删除
+-- 重放预写日志时只计入标记仍存在的增量，未提交和已刷盘的都会跳过
+create table if not exists thumb_count_tx
+(
+    txId       bigint                             not null primary key,
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间'
+);
+
+-- 点赞事件去重窗口：每个用户已落库的事件序号，与点赞落库在同一事务中更新
+create table if not exists thumb_event_window
+(
+    userId     bigint                             not null primary key,
+    baseSeq    bigint   default 0                 not null comment '不大于该序号的事件均已落库',
+    applied    text                               null comment '大于 baseSeq 的已落库事件：序号偏移:题目id，逗号分隔',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间'
+);
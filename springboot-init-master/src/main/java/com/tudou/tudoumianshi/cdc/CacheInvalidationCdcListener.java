@@ -0,0 +1,54 @@
+package com.tudou.tudoumianshi.cdc;
+
+import com.tudou.tudoumianshi.manager.cache.QuestionThumbCountManager;
+import com.tudou.tudoumianshi.manager.cache.ThumbBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 根据 binlog 变更维护缓存，覆盖绕过业务代码的写入（后台修改、补偿任务、其他服务）
+ * <p>
+ * 1. 题目被删除或逻辑删除时移除点赞数读模型中的字段
+ * 2. 新增点赞记录写入布隆过滤器并广播到各节点，本地已包含的跳过
+ */
+@Component
+@Slf4j
+public class CacheInvalidationCdcListener {
+
+    @Resource
+    private QuestionThumbCountManager questionThumbCountManager;
+
+    @Resource
+    private ThumbBloomFilter thumbBloomFilter;
+
+    @EventListener
+    public void onRowChanges(RowChangesEvent event) {
+        List<Long> deletedQuestionIds = new ArrayList<>();
+        for (RowChange change : event.forTable("question")) {
+            Long isDelete = change.getLong("isDelete");
+            if (change.getType() == RowChange.Type.DELETE || (isDelete != null && isDelete == 1)) {
+                deletedQuestionIds.add(change.getLong("id"));
+            }
+        }
+        if (!deletedQuestionIds.isEmpty()) {
+            questionThumbCountManager.evict(deletedQuestionIds);
+            log.debug("CDC 移除已删除题目的点赞数缓存: {}", deletedQuestionIds);
+        }
+        for (RowChange change : event.forTable("thumb")) {
+            if (change.getType() != RowChange.Type.INSERT) {
+                // 布隆过滤器不支持删除，误判由 Redis 兜底
+                continue;
+            }
+            Long userId = change.getLong("userId");
+            Long questionId = change.getLong("questionId");
+            if (userId != null && questionId != null) {
+                thumbBloomFilter.putIfAbsent(userId, questionId);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.tudou.tudoumianshi.cdc;
+
+import cn.hutool.json.JSONUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * binlog 变更分发
+ * <p>
+ * 1. 集群内只有持有租约的节点消费，保证变更按 binlog 顺序处理
+ * 2. 每批变更以 RowChangesEvent 同步发布给监听器（ES 索引、缓存失效等），全部成功后提交 offset 到 Redis
+ * 3. 监听器失败时不提交，退避后从同一 offset 重读整批；监听器需按最终状态幂等
+ * 4. 无法解析的记录写入死信列表 cdc:dead_letter:{source} 后跳过，不阻塞后续变更；只有被过滤记录的批次也提交 offset
+ */
+@Component
+@ConditionalOnProperty(name = "cdc.enabled", havingValue = "true")
+@Slf4j
+public class CdcManager {
+
+    private static final String CHECKPOINT_KEY_PREFIX = "cdc:checkpoint:";
+
+    private static final String LEASE_KEY_PREFIX = "cdc:lease:";
+
+    private static final String DEAD_LETTER_KEY_PREFIX = "cdc:dead_letter:";
+
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    @Resource
+    private RowChangeSource rowChangeSource;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${cdc.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 没有新变更时的轮询间隔（毫秒）
+     */
+    @Value("${cdc.poll-interval:200}")
+    private long pollInterval;
+
+    /**
+     * 死信列表保留的条数
+     */
+    @Value("${cdc.dead-letter-size:1000}")
+    private long deadLetterSize;
+
+    private volatile boolean running = true;
+
+    private ExecutorService dispatcher;
+
+    /**
+     * 最近处理的变更的提交时间
+     */
+    private final AtomicLong lastEventTs = new AtomicLong();
+
+    private Counter failedCounter;
+
+    private Counter malformedCounter;
+
+    @PostConstruct
+    public void init() {
+        failedCounter = meterRegistry.counter("cdc.failed");
+        malformedCounter = meterRegistry.counter("cdc.malformed");
+        Gauge.builder("cdc.lag", lastEventTs, t -> t.get() > 0 ? (System.currentTimeMillis() - t.get()) / 1000.0 : 0)
+                .description("最近处理的变更距今的秒数")
+                .register(meterRegistry);
+        dispatcher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("cdc-dispatcher-"));
+        dispatcher.execute(this::run);
+        log.info("binlog 变更分发启动: source={}", rowChangeSource.name());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        // 不指定租期，宕机后租约随看门狗停止续期而释放，其他节点从已提交的 offset 接手
+        RLock lease = redissonClient.getLock(LEASE_KEY_PREFIX + rowChangeSource.name());
+        while (running) {
+            try {
+                if (!lease.tryLock(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
+                try {
+                    dispatchLoop();
+                } finally {
+                    if (lease.isHeldByCurrentThread()) {
+                        lease.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("获取 binlog 分发租约失败", e);
+                sleep(1000);
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        String checkpointKey = CHECKPOINT_KEY_PREFIX + rowChangeSource.name();
+        String offset = stringRedisTemplate.opsForValue().get(checkpointKey);
+        long backoff = pollInterval;
+        while (running) {
+            RowChangeBatch batch;
+            try {
+                batch = rowChangeSource.poll(offset, batchSize);
+                if (!batch.getChanges().isEmpty()) {
+                    applicationEventPublisher.publishEvent(new RowChangesEvent(this, batch.getChanges()));
+                }
+                // 先写死信再提交 offset，跳过的记录不会丢
+                if (!batch.getMalformed().isEmpty()) {
+                    deadLetter(batch.getMalformed());
+                }
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("binlog 变更处理失败，{}ms 后重试: offset={}", backoff, offset, e);
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                continue;
+            }
+            backoff = pollInterval;
+            if (batch.getOffset() == null || batch.getOffset().equals(offset)) {
+                sleep(pollInterval);
+                continue;
+            }
+            offset = batch.getOffset();
+            stringRedisTemplate.opsForValue().set(checkpointKey, offset);
+            List<RowChange> changes = batch.getChanges();
+            if (!changes.isEmpty()) {
+                lastEventTs.set(changes.get(changes.size() - 1).getTs());
+            }
+            for (RowChange change : changes) {
+                meterRegistry.counter("cdc.events", "table", String.valueOf(change.getTable())).increment();
+            }
+        }
+    }
+
+    private void deadLetter(List<RowChangeBatch.Malformed> malformed) {
+        String key = DEAD_LETTER_KEY_PREFIX + rowChangeSource.name();
+        List<String> entries = new ArrayList<>(malformed.size());
+        for (RowChangeBatch.Malformed item : malformed) {
+            entries.add(JSONUtil.toJsonStr(item));
+        }
+        stringRedisTemplate.opsForList().leftPushAll(key, entries);
+        stringRedisTemplate.opsForList().trim(key, 0, deadLetterSize - 1);
+        malformedCounter.increment(malformed.size());
+    }
+
+    private void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.tudou.tudoumianshi.cdc;
+
+import cn.hutool.json.JSONConfig;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 追踪 Maxwell 格式（每行一个 JSON）的 binlog 变更文件，offset 为已读取的字节数
+ * <p>
+ * 本地开发和测试时替代嵌入式 binlog 客户端：Maxwell 的 file producer 直接产出该格式，也可以手动追加行模拟变更。
+ * 未以换行结束的最后一行视为尚未写完，下次再读；无法解析的行跳过并交给调用方转入死信
+ */
+@Slf4j
+public class MaxwellFileRowChangeSource implements RowChangeSource {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+
+    /**
+     * 只保留该库的变更，为空时不过滤
+     */
+    private final String database;
+
+    public MaxwellFileRowChangeSource(Path path, String database) {
+        this.path = path;
+        this.database = database;
+    }
+
+    @Override
+    public String name() {
+        return "maxwell-file:" + path.getFileName();
+    }
+
+    @Override
+    public RowChangeBatch poll(String offset, int maxEvents) throws IOException {
+        RowChangeBatch batch = new RowChangeBatch();
+        batch.setOffset(offset);
+        if (!Files.exists(path)) {
+            return batch;
+        }
+        long position = offset != null ? Long.parseLong(offset) : 0L;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() < position) {
+                // 文件被截断或轮转，从头重放，下游按最终状态幂等
+                log.warn("binlog 变更文件变短，从头读取: path={}, offset={}, length={}", path, position, file.length());
+                position = 0;
+            }
+            file.seek(position);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int read;
+            while (batch.size() < maxEvents && (read = file.read(buffer)) > 0) {
+                int start = 0;
+                for (int i = 0; i < read && batch.size() < maxEvents; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    line.write(buffer, start, i - start);
+                    position += line.size() + 1;
+                    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    try {
+                        RowChange change = parse(text, position);
+                        if (change != null) {
+                            batch.getChanges().add(change);
+                        }
+                    } catch (RuntimeException e) {
+                        log.warn("跳过无法解析的 binlog 变更: path={}, offset={}", path, position, e);
+                        batch.getMalformed().add(new RowChangeBatch.Malformed(String.valueOf(position), text, e.toString()));
+                    }
+                    line.reset();
+                    start = i + 1;
+                }
+                if (batch.size() >= maxEvents) {
+                    break;
+                }
+                line.write(buffer, start, read - start);
+            }
+        }
+        // 被过滤的行也推进位置，否则全是其他库变更时会一直停在原处
+        batch.setOffset(String.valueOf(position));
+        return batch;
+    }
+
+    /**
+     * 解析一行，非行变更（DDL、bootstrap 起止标记等）、其他库的变更返回 null
+     */
+    RowChange parse(String line, long offset) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        JSONObject json = JSONUtil.parseObj(line, JSONConfig.create().setIgnoreNullValue(false));
+        if (database != null && !database.isEmpty() && !database.equals(json.getStr("database"))) {
+            return null;
+        }
+        RowChange.Type type;
+        switch (json.getStr("type", "")) {
+            case "insert":
+            case "bootstrap-insert":
+                type = RowChange.Type.INSERT;
+                break;
+            case "update":
+                type = RowChange.Type.UPDATE;
+                break;
+            case "delete":
+                type = RowChange.Type.DELETE;
+                break;
+            default:
+                return null;
+        }
+        RowChange change = new RowChange();
+        change.setDatabase(json.getStr("database"));
+        change.setTable(json.getStr("table"));
+        change.setType(type);
+        // Maxwell 的 ts 为秒
+        change.setTs(json.getLong("ts", 0L) * 1000);
+        change.setData(toMap(json.getJSONObject("data")));
+        change.setOld(toMap(json.getJSONObject("old")));
+        change.setOffset(String.valueOf(offset));
+        return change;
+    }
+
+    private static Map<String, Object> toMap(JSONObject json) {
+        if (json == null) {
+            return Collections.emptyMap();
+        }
+        // 保留值为 null 的列，UPDATE 的 old 需要据此判断哪些列被修改
+        Map<String, Object> map = new HashMap<>(json.size() * 2);
+        json.forEach((column, value) -> map.put(column, JSONUtil.isNull(value) ? null : value));
+        return map;
+    }
+}
@@ -0,0 +1,71 @@
+package com.tudou.tudoumianshi.cdc;
+
+import com.tudou.tudoumianshi.manager.QuestionEsBulkIndexer;
+import com.tudou.tudoumianshi.manager.QuestionEsIndexLifecycleManager;
+import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
+import com.tudou.tudoumianshi.model.entity.Question;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 根据 question、question_bank_question 的变更增量更新 ES，替代按 updateTime 轮询的 IncSyncQuestionToEs
+ * <p>
+ * 变更只用来确定受影响的题目，文档内容从数据库重新读取，重放或乱序都会得到最终状态；
+ * 索引切换回填期间同时写入新索引
+ */
+// todo 取消注释开启任务（须先配置 ES 并开启 cdc.enabled）
+//@Component
+@Slf4j
+public class QuestionEsCdcListener {
+
+    /**
+     * 只修改这些列的 UPDATE 不影响 ES 文档，点赞数刷盘会频繁产生此类变更
+     */
+    private static final Set<String> IGNORED_COLUMNS = new HashSet<>(Arrays.asList("thumbCount", "updateTime"));
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private QuestionEsBulkIndexer questionEsBulkIndexer;
+
+    @Resource
+    private QuestionEsIndexLifecycleManager questionEsIndexLifecycleManager;
+
+    @EventListener
+    public void onRowChanges(RowChangesEvent event) throws IOException {
+        Set<Long> questionIds = new LinkedHashSet<>();
+        for (RowChange change : event.forTable("question")) {
+            if (!change.onlyChanged(IGNORED_COLUMNS)) {
+                questionIds.add(change.getLong("id"));
+            }
+        }
+        for (RowChange change : event.forTable("question_bank_question")) {
+            questionIds.add(change.getLong("questionId"));
+            // 题目从一个题库移到另一个题库
+            questionIds.add(change.getOldLong("questionId"));
+        }
+        questionIds.remove(null);
+        if (questionIds.isEmpty()) {
+            return;
+        }
+        List<Question> questions = questionMapper.listQuestionWithDeleteByIds(questionIds);
+        // 逻辑删除的题目保留文档，与增量同步一致，查询时按 isDelete 过滤
+        List<QuestionEsDTO> documents = questionEsBulkIndexer.toDocuments(questions);
+        for (Question question : questions) {
+            questionIds.remove(question.getId());
+        }
+        // 剩余的已物理删除
+        questionEsBulkIndexer.writeDocuments(questionEsIndexLifecycleManager.getWriteIndices(), documents, questionIds);
+        log.debug("CDC 同步题目到 ES: saved={}, deleted={}", documents.size(), questionIds.size());
+    }
+}
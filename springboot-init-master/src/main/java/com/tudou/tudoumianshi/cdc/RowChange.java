@@ -0,0 +1,66 @@
+package com.tudou.tudoumianshi.cdc;
+
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * binlog 中的一行变更
+ */
+@Data
+public class RowChange {
+
+    private String database;
+
+    private String table;
+
+    private Type type;
+
+    /**
+     * 事务提交时间（毫秒）
+     */
+    private long ts;
+
+    /**
+     * 变更后的行（DELETE 为删除前的行）
+     */
+    private Map<String, Object> data = Collections.emptyMap();
+
+    /**
+     * UPDATE 时被修改列的旧值
+     */
+    private Map<String, Object> old = Collections.emptyMap();
+
+    /**
+     * 处理完该变更后的续传位置
+     */
+    private String offset;
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    public Long getLong(String column) {
+        return toLong(data.get(column));
+    }
+
+    public Long getOldLong(String column) {
+        return old.containsKey(column) ? toLong(old.get(column)) : getLong(column);
+    }
+
+    /**
+     * UPDATE 是否只修改了给定的列
+     */
+    public boolean onlyChanged(Set<String> columns) {
+        return type == Type.UPDATE && !old.isEmpty() && columns.containsAll(old.keySet());
+    }
+
+    private static Long toLong(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+    }
+}
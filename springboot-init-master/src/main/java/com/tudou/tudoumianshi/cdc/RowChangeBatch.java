@@ -0,0 +1,49 @@
+package com.tudou.tudoumianshi.cdc;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次读取的结果
+ */
+@Data
+public class RowChangeBatch {
+
+    /**
+     * 按 binlog 顺序排列的行变更
+     */
+    private final List<RowChange> changes = new ArrayList<>();
+
+    /**
+     * 无法解析的记录，跳过并转入死信
+     */
+    private final List<Malformed> malformed = new ArrayList<>();
+
+    /**
+     * 本次已扫描到的位置，包括被过滤和无法解析的记录；没有读到完整记录时与传入的 offset 相同
+     */
+    private String offset;
+
+    public int size() {
+        return changes.size() + malformed.size();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Malformed {
+
+        /**
+         * 跳过该记录后的续传位置
+         */
+        private String offset;
+
+        private String raw;
+
+        private String error;
+    }
+}
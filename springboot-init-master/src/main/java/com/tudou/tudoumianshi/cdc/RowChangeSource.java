@@ -0,0 +1,26 @@
+package com.tudou.tudoumianshi.cdc;
+
+import java.io.IOException;
+
+/**
+ * 行变更来源，按 binlog 顺序返回
+ * <p>
+ * 实现需保证从同一 offset 重复读取得到相同的变更，消费端处理成功后才提交 offset（至少一次）
+ */
+public interface RowChangeSource {
+
+    /**
+     * 来源名称，用于区分续传位置
+     */
+    String name();
+
+    /**
+     * 从 offset 之后读取变更
+     * <p>
+     * 被过滤的记录也推进返回的 offset；无法解析的记录放入 malformed 并同样推进，不阻塞后续变更
+     *
+     * @param offset    上次提交的位置，null 表示从头读取
+     * @param maxEvents 最多返回的变更数（含无法解析的记录）
+     */
+    RowChangeBatch poll(String offset, int maxEvents) throws IOException;
+}
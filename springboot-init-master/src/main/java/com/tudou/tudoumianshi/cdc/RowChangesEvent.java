@@ -0,0 +1,27 @@
+package com.tudou.tudoumianshi.cdc;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 一批按 binlog 顺序排列的行变更，监听器同步处理，抛出异常时整批重试
+ */
+@Getter
+public class RowChangesEvent extends ApplicationEvent {
+
+    private final List<RowChange> changes;
+
+    public RowChangesEvent(Object source, List<RowChange> changes) {
+        super(source);
+        this.changes = changes;
+    }
+
+    public List<RowChange> forTable(String table) {
+        return changes.stream()
+                .filter(change -> table.equals(change.getTable()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,32 @@
+package com.tudou.tudoumianshi.config;
+
+import com.tudou.tudoumianshi.cdc.MaxwellFileRowChangeSource;
+import com.tudou.tudoumianshi.cdc.RowChangeSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * binlog 变更来源配置
+ */
+@Configuration
+@ConditionalOnProperty(name = "cdc.enabled", havingValue = "true")
+public class CdcConfig {
+
+    @Value("${cdc.file.path:${java.io.tmpdir}/maxwell/binlog.json}")
+    private String filePath;
+
+    @Value("${cdc.database:tudouda}")
+    private String database;
+
+    /**
+     * 追踪 Maxwell file producer 输出的文件；接入嵌入式 binlog 客户端时替换该 Bean
+     */
+    @Bean
+    public RowChangeSource rowChangeSource() {
+        return new MaxwellFileRowChangeSource(Paths.get(filePath), database);
+    }
+}
@@ -3,6 +3,7 @@ package com.tudou.tudoumianshi.config;
 import org.apache.pulsar.client.api.*;
 import org.apache.pulsar.client.impl.MultiplierRedeliveryBackoff;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +19,15 @@ public class ThumbConsumerConfig {
     @Autowired(required = false)
     private PulsarClient pulsarClient;
 
+    @Value("${thumb.consumer.batch-max-messages:1000}")
+    private int batchMaxMessages;
+
+    /**
+     * 凑批最长等待时间（毫秒），决定低峰期的落库延迟
+     */
+    @Value("${thumb.consumer.batch-timeout:200}")
+    private int batchTimeout;
+
     /**
      * 创建批量接收策略
      */
@@ -25,8 +35,8 @@ public class ThumbConsumerConfig {
     public BatchReceivePolicy batchReceivePolicy() {
         // 显式使用Builder模式，避免类型推断问题
         return BatchReceivePolicy.builder()
-                .maxNumMessages(1000)      // 每次处理1000条
-                .timeout(10000, TimeUnit.MILLISECONDS) // 超时时间10秒
+                .maxNumMessages(batchMaxMessages)
+                .timeout(batchTimeout, TimeUnit.MILLISECONDS)
                 .build();
     }
 
@@ -3,6 +3,8 @@ package com.tudou.tudoumianshi.constant;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 
+import java.util.List;
+
 public interface RedisLuaScriptConstant {
 
     /**
@@ -75,16 +77,32 @@ public interface RedisLuaScriptConstant {
     );
 
 
+    /**
+     * 分配用户内单调递增的事件序号，KEYS[2] 为序号键，ARGV[2] 为当前微秒时间戳
+     * 序号键丢失（Redis 重建、淘汰）时从时间戳起步，不会回退到已落库的序号之下
+     */
+    public static final String NEXT_THUMB_SEQ_LUA =
+            "local function nextSeq()\n" +
+                    "    if redis.call(\"EXISTS\", KEYS[2]) == 0 then\n" +
+                    "        redis.call(\"SET\", KEYS[2], ARGV[2])\n" +
+                    "    end\n" +
+                    "    return redis.call(\"INCR\", KEYS[2])\n" +
+                    "end\n";
+
     /**
      * 点赞 Lua 脚本（JDK 8 兼容）
      * KEYS[1]       -- 用户点赞状态键
+     * KEYS[2]       -- 用户点赞事件序号键
+     * KEYS[3]       -- 题目点赞数读模型键
      * ARGV[1]       -- 博客 ID
+     * ARGV[2]       -- 当前微秒时间戳
      * 返回:
      * -1: 已点赞
-     * 1: 操作成功
+     * 正数: 操作成功，值为该用户本次事件的序号
      */
     public static final RedisScript<Long> THUMB_SCRIPT_MQ = new DefaultRedisScript<>(
-            "local userThumbKey = KEYS[1]\n" +
+            NEXT_THUMB_SEQ_LUA +
+                    "local userThumbKey = KEYS[1]\n" +
                     "local questionId = ARGV[1]\n" +
                     "\n" +
                     "-- 判断是否已经点赞\n" +
@@ -94,20 +112,29 @@ public interface RedisLuaScriptConstant {
                     "\n" +
                     "-- 添加点赞记录\n" +
                     "redis.call(\"HSET\", userThumbKey, questionId, 1)\n" +
-                    "return 1",
+                    "-- 题目点赞数读模型已初始化时同步累加\n" +
+                    "if redis.call(\"HEXISTS\", KEYS[3], questionId) == 1 then\n" +
+                    "    redis.call(\"HINCRBY\", KEYS[3], questionId, 1)\n" +
+                    "end\n" +
+                    "-- 分配用户内单调递增的事件序号\n" +
+                    "return nextSeq()",
             Long.class
     );
 
     /**
      * 取消点赞 Lua 脚本（JDK 8 兼容）
      * KEYS[1]       -- 用户点赞状态键
+     * KEYS[2]       -- 用户点赞事件序号键
+     * KEYS[3]       -- 题目点赞数读模型键
      * ARGV[1]       -- 博客 ID
+     * ARGV[2]       -- 当前微秒时间戳
      * 返回:
      * -1: 未点赞
-     * 1: 操作成功
+     * 正数: 操作成功，值为该用户本次事件的序号
      */
     public static final RedisScript<Long> UNTHUMB_SCRIPT_MQ = new DefaultRedisScript<>(
-            "local userThumbKey = KEYS[1]\n" +
+            NEXT_THUMB_SEQ_LUA +
+                    "local userThumbKey = KEYS[1]\n" +
                     "local questionId = ARGV[1]\n" +
                     "\n" +
                     "-- 判断是否已点赞\n" +
@@ -117,7 +144,128 @@ public interface RedisLuaScriptConstant {
                     "\n" +
                     "-- 删除点赞记录\n" +
                     "redis.call(\"HDEL\", userThumbKey, questionId)\n" +
-                    "return 1",
+                    "-- 题目点赞数读模型已初始化时同步扣减\n" +
+                    "if redis.call(\"HEXISTS\", KEYS[3], questionId) == 1 then\n" +
+                    "    redis.call(\"HINCRBY\", KEYS[3], questionId, -1)\n" +
+                    "end\n" +
+                    "-- 分配用户内单调递增的事件序号\n" +
+                    "return nextSeq()",
+            Long.class
+    );
+
+    /**
+     * 批量读取点赞状态并分配事件序号，供重放、补偿事件使用；与用户操作互斥执行，之后的用户操作序号一定更大
+     * KEYS[2i-1]    -- 用户点赞状态键
+     * KEYS[2i]      -- 用户点赞事件序号键
+     * ARGV[2i-1]    -- 题目 ID
+     * ARGV[2i]      -- 期望状态：1 已点赞 / 0 未点赞 / -1 不限，状态不符时不分配序号
+     * ARGV[#ARGV]   -- 当前微秒时间戳
+     * 返回: {是否已点赞1, 序号1, 是否已点赞2, 序号2, ...}，未分配序号时为 0
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> SNAPSHOT_THUMB_STATE_SCRIPT = new DefaultRedisScript<>(
+            "local floor = ARGV[#ARGV]\n" +
+                    "local result = {}\n" +
+                    "for i = 1, #KEYS / 2 do\n" +
+                    "    local exists = redis.call(\"HEXISTS\", KEYS[2 * i - 1], ARGV[2 * i - 1])\n" +
+                    "    local expected = tonumber(ARGV[2 * i])\n" +
+                    "    local seq = 0\n" +
+                    "    if expected < 0 or expected == exists then\n" +
+                    "        if redis.call(\"EXISTS\", KEYS[2 * i]) == 0 then\n" +
+                    "            redis.call(\"SET\", KEYS[2 * i], floor)\n" +
+                    "        end\n" +
+                    "        seq = redis.call(\"INCR\", KEYS[2 * i])\n" +
+                    "    end\n" +
+                    "    result[2 * i - 1] = exists\n" +
+                    "    result[2 * i] = seq\n" +
+                    "end\n" +
+                    "return result",
+            List.class
+    );
+
+    /**
+     * 题目点赞数读模型：字段已初始化时累加
+     * KEYS[1]       -- 题目点赞数读模型键
+     * ARGV[1]       -- 题目 ID
+     * ARGV[2]       -- 增量
+     * 返回: 字段未初始化时返回 nil
+     */
+    public static final RedisScript<Long> THUMB_COUNT_INCR_IF_PRESENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call(\"HEXISTS\", KEYS[1], ARGV[1]) == 1 then\n" +
+                    "    return redis.call(\"HINCRBY\", KEYS[1], ARGV[1], ARGV[2])\n" +
+                    "end\n" +
+                    "return nil",
+            Long.class
+    );
+
+    /**
+     * 从指定游标读取一页 hash，供按游标断点续传
+     * KEYS[1]       -- hash 键
+     * ARGV[1]       -- 游标
+     * ARGV[2]       -- COUNT
+     * 返回: {下一游标, {field1, value1, field2, value2, ...}}
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> HSCAN_PAGE_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call(\"HSCAN\", KEYS[1], ARGV[1], \"COUNT\", ARGV[2])",
+            List.class
+    );
+
+    /**
+     * 从指定游标读取一页 key，供按游标断点续传
+     * ARGV[1]       -- 游标
+     * ARGV[2]       -- MATCH 模式
+     * ARGV[3]       -- COUNT
+     * 返回: {下一游标, {key1, key2, ...}}
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> SCAN_PAGE_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call(\"SCAN\", ARGV[1], \"MATCH\", ARGV[2], \"COUNT\", ARGV[3])",
+            List.class
+    );
+
+    /**
+     * 布隆过滤器新增：写入 Redis 位数组（重建中时同时写入新位数组），分配序号并广播
+     * KEYS[1]       -- 当前位数组，不存在时说明尚未完成首次构建，不写入
+     * KEYS[2]       -- 重建中的位数组
+     * KEYS[3]       -- 新增序号
+     * ARGV[1]       -- 广播频道
+     * ARGV[2]       -- userId:questionId
+     * ARGV[3..]     -- 位下标
+     * 返回: 本次新增的序号
+     */
+    public static final RedisScript<Long> BLOOM_ADD_SCRIPT = new DefaultRedisScript<>(
+            "local targets = {}\n" +
+                    "if redis.call(\"EXISTS\", KEYS[1]) == 1 then\n" +
+                    "    targets[#targets + 1] = KEYS[1]\n" +
+                    "end\n" +
+                    "if redis.call(\"EXISTS\", KEYS[2]) == 1 then\n" +
+                    "    targets[#targets + 1] = KEYS[2]\n" +
+                    "end\n" +
+                    "for _, key in ipairs(targets) do\n" +
+                    "    for i = 3, #ARGV do\n" +
+                    "        redis.call(\"SETBIT\", key, ARGV[i], 1)\n" +
+                    "    end\n" +
+                    "end\n" +
+                    "local seq = redis.call(\"INCR\", KEYS[3])\n" +
+                    "redis.call(\"PUBLISH\", ARGV[1], seq .. \":\" .. ARGV[2])\n" +
+                    "return seq",
+            Long.class
+    );
+
+    /**
+     * 布隆过滤器重建完成：合并重建期间的新增后原子替换当前位数组，并递增版本通知各节点重新加载
+     * KEYS[1]       -- 重建中的位数组（期间新增）
+     * KEYS[2]       -- 上传的重建结果
+     * KEYS[3]       -- 当前位数组
+     * KEYS[4]       -- 版本号
+     * 返回: 新版本号
+     */
+    public static final RedisScript<Long> BLOOM_PUBLISH_REBUILD_SCRIPT = new DefaultRedisScript<>(
+            "redis.call(\"BITOP\", \"OR\", KEYS[1], KEYS[1], KEYS[2])\n" +
+                    "redis.call(\"DEL\", KEYS[2])\n" +
+                    "redis.call(\"RENAME\", KEYS[1], KEYS[3])\n" +
+                    "return redis.call(\"INCR\", KEYS[4])",
             Long.class
     );
 }
@@ -5,8 +5,74 @@ public interface ThumbConstant {
     String USER_THUMB_KEY_PREFIX = "thumb:";
     Long UN_THUMB_CONSTANT = 0L;
     /**
-     * 临时 点赞记录 key
+     * 临时 点赞记录 key：thumb_temp:{yyyyMMddHHmmss 时间片}:{分片}，不以 thumb: 开头，避免被当作用户点赞记录
      */
-    String TEMP_THUMB_KEY_PREFIX = "thumb:temp:%s";
+    String TEMP_THUMB_KEY_PREFIX = "thumb_temp:";
+
+    /**
+     * 正在落库的临时点赞记录 key 前缀，同步任务先将分片 RENAME 为该 key 再处理
+     */
+    String TEMP_THUMB_PROCESSING_KEY_PREFIX = "thumb_temp_processing:";
+
+    /**
+     * 临时点赞记录落库进度（hash，field 为 processing key，value 为已提交的 HSCAN 游标）
+     */
+    String TEMP_THUMB_CHECKPOINT_KEY = "thumb_temp_checkpoint";
+
+    /**
+     * 临时点赞记录按 questionId 取模的分片数，修改前需先同步完已有的临时数据
+     */
+    int TEMP_THUMB_SHARDS = 16;
+
+    /**
+     * 用户点赞事件序号 key，不以 thumb: 开头，避免被按 thumb:* 扫描的任务当作用户点赞记录
+     */
+    String USER_THUMB_SEQ_KEY_PREFIX = "thumb_seq:";
+
+    /**
+     * 死信队列中待重放的点赞关系（userId:questionId 列表）
+     */
+    String DLQ_PENDING_KEY = "thumb_dlq:pending";
+
+    /**
+     * 最近的毒消息样本（定长列表）
+     */
+    String DLQ_POISON_SAMPLES_KEY = "thumb_dlq:poison";
+
+    /**
+     * 累计毒消息数
+     */
+    String DLQ_POISON_TOTAL_KEY = "thumb_dlq:poison_total";
+
+    /**
+     * 死信重放锁，保证集群内同时只有一个节点重放
+     */
+    String DLQ_REPLAY_LOCK_KEY = "thumb_dlq:replay_lock";
+
+    /**
+     * 点赞关系对账进度（hash，field 为用户 key 前缀，value 为已入队的 SCAN 游标；
+     * field 加 :finished 后缀记录上一轮扫描完成的时间）
+     */
+    String RECONCILE_CHECKPOINT_KEY = "thumb_reconcile:checkpoint";
+
+    /**
+     * 点赞关系对账扫描租约前缀，每个用户 key 前缀同时只有一个节点扫描
+     */
+    String RECONCILE_LEASE_KEY_PREFIX = "thumb_reconcile:lease:";
+
+    /**
+     * 待对账的用户批次（list，元素为逗号分隔的 userId），各节点并行领取
+     */
+    String RECONCILE_QUEUE_KEY = "thumb_reconcile:queue";
+
+    /**
+     * 上一轮发现、等待下一轮确认的差异（hash，每个用户一个，field 为题目 id，value 为 方向:首次发现时间）
+     */
+    String RECONCILE_SUSPECT_KEY_PREFIX = "thumb_reconcile:suspect:";
+
+    /**
+     * 题目点赞数读模型（hash，field 为题目 id）
+     */
+    String QUESTION_THUMB_COUNT_KEY = "question:thumbcount";
 
 }
@@ -0,0 +1,46 @@
+package com.tudou.tudoumianshi.controller;
+
+import cn.dev33.satoken.annotation.SaCheckRole;
+import com.tudou.tudoumianshi.common.BaseResponse;
+import com.tudou.tudoumianshi.common.ResultUtils;
+import com.tudou.tudoumianshi.constant.UserConstant;
+import com.tudou.tudoumianshi.manager.QuestionEsIndexLifecycleManager;
+import com.tudou.tudoumianshi.model.vo.QuestionIndexStatusVO;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+
+/**
+ * 题目 ES 索引管理接口（仅管理员）
+ */
+@RestController
+@RequestMapping("/question/index")
+public class QuestionIndexController {
+
+    @Resource
+    private QuestionEsIndexLifecycleManager questionEsIndexLifecycleManager;
+
+    /**
+     * 索引版本与别名状态
+     */
+    @GetMapping("/status")
+    @SaCheckRole(UserConstant.ADMIN_ROLE)
+    public BaseResponse<QuestionIndexStatusVO> getStatus() throws IOException {
+        return ResultUtils.success(questionEsIndexLifecycleManager.getStatus());
+    }
+
+    /**
+     * 异步新建下一个版本的索引并切换别名，修改 es/question_index.json 后调用
+     *
+     * @return 是否已开始切换，已有节点在切换时返回 false
+     */
+    @PostMapping("/rollover")
+    @SaCheckRole(UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> rollover() {
+        return ResultUtils.success(questionEsIndexLifecycleManager.startRollover());
+    }
+}
@@ -0,0 +1,46 @@
+package com.tudou.tudoumianshi.controller;
+
+import cn.dev33.satoken.annotation.SaCheckRole;
+import com.tudou.tudoumianshi.common.BaseResponse;
+import com.tudou.tudoumianshi.common.ResultUtils;
+import com.tudou.tudoumianshi.constant.UserConstant;
+import com.tudou.tudoumianshi.manager.ThumbDeadLetterManager;
+import com.tudou.tudoumianshi.model.vo.ThumbDeadLetterVO;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * 点赞死信队列管理接口（仅管理员）
+ */
+@RestController
+@RequestMapping("/thumb/dlq")
+public class ThumbDeadLetterController {
+
+    @Resource
+    private ThumbDeadLetterManager thumbDeadLetterManager;
+
+    /**
+     * 死信队列深度与样本
+     */
+    @GetMapping("/stats")
+    @SaCheckRole(UserConstant.ADMIN_ROLE)
+    public BaseResponse<ThumbDeadLetterVO> getStats() {
+        return ResultUtils.success(thumbDeadLetterManager.getStats());
+    }
+
+    /**
+     * 异步重放待重放的点赞关系
+     *
+     * @return 是否已开始重放，已有节点在重放时返回 false
+     */
+    @PostMapping("/replay")
+    @SaCheckRole(UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> replay(@RequestParam(defaultValue = "1000000") long limit) {
+        return ResultUtils.success(thumbDeadLetterManager.startReplay(limit));
+    }
+}
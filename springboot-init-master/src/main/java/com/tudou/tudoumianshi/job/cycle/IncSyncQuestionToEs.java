@@ -2,7 +2,8 @@ package com.tudou.tudoumianshi.job.cycle;
 
 import cn.hutool.core.collection.CollUtil;
 import com.tudou.tudoumianshi.annotation.DistributedLock;
-import com.tudou.tudoumianshi.esdao.QuestionEsDao;
+import com.tudou.tudoumianshi.manager.QuestionEsBulkIndexer;
+import com.tudou.tudoumianshi.manager.QuestionEsIndexLifecycleManager;
 import com.tudou.tudoumianshi.mapper.QuestionMapper;
 import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
 import com.tudou.tudoumianshi.model.entity.Question;
@@ -10,10 +11,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+/**
+ * 按 updateTime 轮询增量同步题目到 ES；开启 cdc.enabled 后改用 QuestionEsCdcListener
+ */
 // todo 取消注释开启任务
 //@Component
 @Slf4j
@@ -23,14 +29,17 @@ public class IncSyncQuestionToEs {
     private QuestionMapper questionMapper;
 
     @Resource
-    private QuestionEsDao questionEsDao;
+    private QuestionEsBulkIndexer questionEsBulkIndexer;
+
+    @Resource
+    private QuestionEsIndexLifecycleManager questionEsIndexLifecycleManager;
 
     /**
      * 每分钟执行一次
      */
     @DistributedLock(key = "run",leaseTime = 20000,waitTime = 5000)
     @Scheduled(fixedRate = 60 * 1000)
-    public void run() {
+    public void run() throws IOException {
         // 查询近 5 分钟内的数据
         long FIVE_MINUTES = 5 * 60 * 1000L;
         Date fiveMinutesAgoDate = new Date(new Date().getTime() - FIVE_MINUTES);
@@ -39,16 +48,16 @@ public class IncSyncQuestionToEs {
             log.info("no inc question");
             return;
         }
-        List<QuestionEsDTO> questionEsDTOList = questionList.stream()
-                .map(QuestionEsDTO::objToDto)
-                .collect(Collectors.toList());
         final int pageSize = 500;
-        int total = questionEsDTOList.size();
+        int total = questionList.size();
+        // 索引切换回填期间同时写入新索引
+        Set<String> indices = questionEsIndexLifecycleManager.getWriteIndices();
         log.info("IncSyncQuestionToEs start, total {}", total);
         for (int i = 0; i < total; i += pageSize) {
             int end = Math.min(i + pageSize, total);
             log.info("sync from {} to {}", i, end);
-            questionEsDao.saveAll(questionEsDTOList.subList(i, end));
+            List<QuestionEsDTO> questionEsDTOList = questionEsBulkIndexer.toDocuments(questionList.subList(i, end));
+            questionEsBulkIndexer.writeDocuments(indices, questionEsDTOList, Collections.emptyList());
         }
         log.info("IncSyncQuestionToEs end, total {}", total);
     }
@@ -1,16 +1,18 @@
 package com.tudou.tudoumianshi.job.cycle;
 
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.date.DateUtil;
 import com.tudou.tudoumianshi.constant.ThumbConstant;
 import com.tudou.tudoumianshi.utils.RedisKeyUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.Resource;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 /**
  * 定时将 Redis 中的临时点赞数据同步到数据库的补偿措施
@@ -23,35 +25,66 @@ import java.util.Set;
 public class SyncThumb2DBCompensatoryJob {
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private SyncThumb2DBJob syncThumb2DBJob;
 
-    @Scheduled(cron = "0 0 2 * * *")
+    /**
+     * 先续传中断的 processing key，再补偿未被定时任务交接的分片
+     */
+    @Scheduled(cron = "${thumb.temp.recover-cron:0 */5 * * * *}")
     public void run() {
         log.info("开始补偿数据");
-        Set<String> thumbKeys = redisTemplate.keys(RedisKeyUtil.getTempThumbKey("") + "*");
-        Set<String> needHandleDataSet = new HashSet<>();
-
-        if (thumbKeys != null) {
-            for (String thumbKey : thumbKeys) {
-                if (ObjUtil.isNotNull(thumbKey)) {
-                    String date = thumbKey.replace(ThumbConstant.TEMP_THUMB_KEY_PREFIX.replace("{}", "") + "", "");
-                    needHandleDataSet.add(date);
-                }
+        List<String> processingKeys = scanKeys(ThumbConstant.TEMP_THUMB_PROCESSING_KEY_PREFIX);
+        for (String processingKey : processingKeys) {
+            try {
+                syncThumb2DBJob.recover(processingKey);
+            } catch (Exception e) {
+                log.error("续传临时点赞数据失败: key={}", processingKey, e);
             }
         }
 
-        if (CollUtil.isEmpty(needHandleDataSet)) {
+        // 当前和上一个时间片仍在写入或由定时任务处理，跳过
+        Date now = DateUtil.date();
+        String currentSlice = RedisKeyUtil.getTempThumbTimeSlice(now);
+        String previousSlice = RedisKeyUtil.getTempThumbTimeSlice(DateUtil.offsetSecond(now, -10));
+        String prefix = ThumbConstant.TEMP_THUMB_KEY_PREFIX;
+        List<String> tempThumbKeys = new ArrayList<>();
+        for (String key : scanKeys(prefix)) {
+            String timeSlice = key.substring(prefix.length(), key.lastIndexOf(':'));
+            if (!timeSlice.equals(currentSlice) && !timeSlice.equals(previousSlice)) {
+                tempThumbKeys.add(key);
+            }
+        }
+
+        if (processingKeys.isEmpty() && tempThumbKeys.isEmpty()) {
             log.info("没有需要补偿的临时数据");
             return;
         }
 
         // 补偿数据
-        for (String date : needHandleDataSet) {
-            syncThumb2DBJob.syncThumb2DBByDate(date);
+        for (String tempThumbKey : tempThumbKeys) {
+            try {
+                syncThumb2DBJob.syncShard(tempThumbKey);
+            } catch (Exception e) {
+                log.error("补偿临时点赞数据失败: key={}", tempThumbKey, e);
+            }
+        }
+        log.info("临时数据补偿完成: processing={}, temp={}", processingKeys.size(), tempThumbKeys.size());
+    }
+
+    /**
+     * SCAN 游标遍历，不阻塞 Redis
+     */
+    private List<String> scanKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(1000).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+            }
         }
-        log.info("临时数据补偿完成");
+        return keys;
     }
 }
@@ -1,106 +1,197 @@
 package com.tudou.tudoumianshi.job.cycle;
 
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.date.DateTime;
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.text.StrPool;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.tudou.tudoumianshi.mapper.QuestionMapper;
-import com.tudou.tudoumianshi.model.entity.Thumb;
+import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
+import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.manager.ThumbPersistManager;
 import com.tudou.tudoumianshi.model.enums.ThumbTypeEnum;
-import com.tudou.tudoumianshi.service.ThumbService;
 import com.tudou.tudoumianshi.utils.RedisKeyUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.apache.commons.lang3.tuple.Pair;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 定时将 Redis 中的临时点赞数据同步到数据库
- *
+ * <p>
+ * 每个时间片按题目分片，各分片并行两阶段交接：
+ * 1. RENAMENX 将分片原子改名为 processing key，之后到达的点赞写入新的分片，不会在删除时丢失
+ * 2. 从已提交的游标开始 HSCAN，每批提交一次事务后记录游标；全部提交后删除进度并 UNLINK
+ * <p>
+ * 中途宕机时由补偿任务从游标处续传。宕机点在提交与记录游标之间时会重放一批，
+ * 落库按最终状态幂等、点赞数按实际新增 / 删除的记录计算，重放不会重复计数
  */
 //@Component
 @Slf4j
 public class SyncThumb2DBJob {
 
+    private static final String LOCK_KEY_PREFIX = "thumb_temp_lock:";
+
+    @Resource
+    private ThumbPersistManager thumbPersistManager;
+
     @Resource
-    private ThumbService thumbService;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private QuestionMapper questionMapper;
+    private TransactionTemplate transactionTemplate;
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private RedissonClient redissonClient;
+
+    @Value("${thumb.temp.sync-parallelism:4}")
+    private int parallelism;
+
+    @Value("${thumb.temp.batch-size:1000}")
+    private int batchSize;
+
+    private ExecutorService shardExecutor;
+
+    @PostConstruct
+    public void init() {
+        shardExecutor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("thumb-sync-"));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        shardExecutor.shutdown();
+    }
 
     @Scheduled(initialDelay = 10000, fixedDelay = 10000)
-    @Transactional(rollbackFor = Exception.class)
     public void run() {
         log.info("开始执行");
-        DateTime nowDate = DateUtil.date();
-        String date = DateUtil.format(nowDate, "HH:mm:") + (DateUtil.second(nowDate) / 10 - 1) * 10;
-        syncThumb2DBByDate(date);
+        // 同步上一个已结束的时间片
+        String timeSlice = RedisKeyUtil.getTempThumbTimeSlice(DateUtil.offsetSecond(DateUtil.date(), -10));
+        syncThumb2DBByTimeSlice(timeSlice);
         log.info("临时数据同步完成");
     }
 
-    public void syncThumb2DBByDate(String date) {
-        String tempThumbKey = RedisKeyUtil.getTempThumbKey(date);
-        Map<Object, Object> allTempThumbMap = redisTemplate.opsForHash().entries(tempThumbKey);
+    /**
+     * 并行同步一个时间片的所有分片
+     */
+    public void syncThumb2DBByTimeSlice(String timeSlice) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ThumbConstant.TEMP_THUMB_SHARDS);
+        for (int shard = 0; shard < ThumbConstant.TEMP_THUMB_SHARDS; shard++) {
+            String tempThumbKey = RedisKeyUtil.getTempThumbKey(timeSlice, shard);
+            futures.add(CompletableFuture.runAsync(() -> syncShard(tempThumbKey), shardExecutor));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (Exception e) {
+                // 失败的分片保留在 Redis 中，由补偿任务重试
+                log.error("同步临时点赞数据失败: timeSlice={}", timeSlice, e);
+            }
+        }
+    }
+
+    /**
+     * 同步单个分片：先续传上次未完成的 processing key，再交接当前分片
+     */
+    public void syncShard(String tempThumbKey) {
+        String processingKey = RedisKeyUtil.getTempThumbProcessingKey(tempThumbKey);
+        withLock(processingKey, () -> {
+            drain(processingKey);
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(tempThumbKey))
+                    && Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(tempThumbKey, processingKey))) {
+                drain(processingKey);
+            }
+        });
+    }
+
+    /**
+     * 续传中途中断的 processing key
+     */
+    public void recover(String processingKey) {
+        withLock(processingKey, () -> drain(processingKey));
+    }
 
-        if (CollUtil.isEmpty(allTempThumbMap)) {
-            log.info("没有临时点赞数据需要同步");
+    private void withLock(String processingKey, Runnable task) {
+        // 多个实例同时处理同一分片时只有一个执行；不指定租期，宕机后锁随看门狗停止续期而释放
+        RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX
+                + processingKey.substring(ThumbConstant.TEMP_THUMB_PROCESSING_KEY_PREFIX.length()));
+        if (!lock.tryLock()) {
             return;
         }
-
-        Map<Long, Long> questionThumbCountMap = new HashMap<>();
-        ArrayList<Thumb> thumbList = new ArrayList<>();
-        LambdaQueryWrapper<Thumb> wrapper = new LambdaQueryWrapper<>();
-        boolean needRemove = false;
-
-        for (Object userIdQuestionIdObj : allTempThumbMap.keySet()) {
-            String userIdQuestionId = (String) userIdQuestionIdObj;
-            String[] userIdAndQuestionId = userIdQuestionId.split(StrPool.COLON);
-            Long userId = Long.valueOf(userIdAndQuestionId[0]);
-            Long questionId = Long.valueOf(userIdAndQuestionId[1]);
-            Integer thumbType = Integer.valueOf(allTempThumbMap.get(userIdQuestionId).toString());
-
-            if (thumbType == ThumbTypeEnum.INCR.getValue()) {
-                Thumb thumb = new Thumb();
-                thumb.setUserId(userId);
-                thumb.setQuestionId(questionId);
-                thumbList.add(thumb);
-            } else if (thumbType == ThumbTypeEnum.DECR.getValue()) {
-                needRemove = true;
-                wrapper.or().eq(Thumb::getUserId, userId).eq(Thumb::getQuestionId, questionId);
-            } else if (thumbType != ThumbTypeEnum.NON.getValue()) {
-                log.warn("数据异常：{}", userId + "," + questionId + "," + thumbType);
+        try {
+            task.run();
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
             }
-            questionThumbCountMap.put(questionId, questionThumbCountMap.getOrDefault(questionId, 0L) + thumbType);
         }
+    }
 
-        // 批量操作
-        thumbService.saveBatch(thumbList);
-        if (needRemove) {
-            thumbService.remove(wrapper);
-        }
-        if (!questionThumbCountMap.isEmpty()) {
-            log.debug("准备批量更新点赞数: {}", questionThumbCountMap);
-            try {
-                questionMapper.batchUpdateThumbCount(questionThumbCountMap);
-                log.debug("批量更新点赞数成功");
-            } catch (Exception e) {
-                log.error("批量更新点赞数失败", e);
+    private void drain(String processingKey) {
+        Object checkpoint = stringRedisTemplate.opsForHash().get(ThumbConstant.TEMP_THUMB_CHECKPOINT_KEY, processingKey);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(processingKey))) {
+            if (checkpoint != null) {
+                // 上次在删除进度后、UNLINK 前中断
+                stringRedisTemplate.opsForHash().delete(ThumbConstant.TEMP_THUMB_CHECKPOINT_KEY, processingKey);
             }
+            return;
+        }
+        String cursor = checkpoint != null ? checkpoint.toString() : "0";
+        if (checkpoint != null) {
+            log.info("续传临时点赞数据: key={}, cursor={}", processingKey, cursor);
         }
+        long total = 0;
+        do {
+            // processing key 不再写入，游标在多次调用之间保持有效
+            List<?> page = stringRedisTemplate.execute(RedisLuaScriptConstant.HSCAN_PAGE_SCRIPT,
+                    Collections.singletonList(processingKey), cursor, String.valueOf(batchSize));
+            cursor = page.get(0).toString();
+            List<?> entries = (List<?>) page.get(1);
+            Map<Pair<Long, Long>, Boolean> finalStates = new HashMap<>(entries.size());
+            for (int i = 0; i + 1 < entries.size(); i += 2) {
+                collect(entries.get(i).toString(), entries.get(i + 1).toString(), finalStates);
+            }
+            if (!finalStates.isEmpty()) {
+                // 点赞数按实际新增 / 删除的记录计算
+                transactionTemplate.executeWithoutResult(status -> thumbPersistManager.apply(finalStates));
+                total += finalStates.size();
+            }
+            if (!"0".equals(cursor)) {
+                stringRedisTemplate.opsForHash().put(ThumbConstant.TEMP_THUMB_CHECKPOINT_KEY, processingKey, cursor);
+            }
+        } while (!"0".equals(cursor));
+        // 先删进度再删数据：中断时最多从头重放一次，不会带着旧游标处理同名的新 key
+        stringRedisTemplate.opsForHash().delete(ThumbConstant.TEMP_THUMB_CHECKPOINT_KEY, processingKey);
+        // 后台释放内存，不阻塞 Redis
+        stringRedisTemplate.unlink(processingKey);
+        log.debug("同步临时点赞分片: key={}, size={}", processingKey, total);
+    }
 
-        // ✅ JDK 8 兼容的异步删除（方案1）
-        CompletableFuture.runAsync(() -> {
-            redisTemplate.delete(tempThumbKey);
-        });
+    private static void collect(String userIdQuestionId, String value, Map<Pair<Long, Long>, Boolean> finalStates) {
+        String[] userIdAndQuestionId = userIdQuestionId.split(StrPool.COLON);
+        Long userId = Long.valueOf(userIdAndQuestionId[0]);
+        Long questionId = Long.valueOf(userIdAndQuestionId[1]);
+        int thumbType = Integer.parseInt(value);
+
+        if (thumbType == ThumbTypeEnum.INCR.getValue()) {
+            finalStates.put(Pair.of(userId, questionId), true);
+        } else if (thumbType == ThumbTypeEnum.DECR.getValue()) {
+            finalStates.put(Pair.of(userId, questionId), false);
+        } else if (thumbType != ThumbTypeEnum.NON.getValue()) {
+            log.warn("数据异常：{}", userId + "," + questionId + "," + thumbType);
+        }
     }
 }
@@ -1,97 +1,464 @@
 package com.tudou.tudoumianshi.job.cycle;
 
-import com.alibaba.nacos.shaded.com.google.common.collect.Sets;
+import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
 import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.exception.BusinessException;
 import com.tudou.tudoumianshi.listener.thumb.ThumbEvent;
+import com.tudou.tudoumianshi.listener.thumb.ThumbSeqWindow;
+import com.tudou.tudoumianshi.manager.ThumbEventPublisher;
+import com.tudou.tudoumianshi.manager.cache.ThumbBloomFilter;
+import com.tudou.tudoumianshi.manager.cache.ThumbStateStore;
+import com.tudou.tudoumianshi.mapper.ThumbEventWindowMapper;
 import com.tudou.tudoumianshi.model.entity.Thumb;
+import com.tudou.tudoumianshi.model.entity.ThumbEventWindow;
 import com.tudou.tudoumianshi.service.ThumbService;
+import com.tudou.tudoumianshi.utils.RedisKeyUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pulsar.client.api.Producer;
-import org.apache.pulsar.client.api.PulsarClient;
-import org.apache.pulsar.client.api.PulsarClientException;
-import org.apache.pulsar.client.api.Schema;
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ScanOptions;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pulsar.client.api.MessageId;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Optional;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 点赞关系增量对账：Redis 用户点赞状态与 thumb 表
+ * <p>
+ * 1. 每个用户 key 前缀一个 SCAN 游标，抢到扫描租约的节点从已提交的游标继续，把用户按批写入对账队列后再提交游标，
+ * 每轮只扫描一遍键空间；队列积压超过 max-queued-batches 时暂停扫描
+ * 2. 各节点从队列领取批次并行对账，每批一次批量读取 Redis、一次 IN 查询 MySQL
+ * 3. 每次只处理有限批次，一轮扫描完成后间隔 round-interval 再开始下一轮，MySQL 压力分摊到全天
+ * 4. 差异先记为待确认，下一轮同一差异仍存在、且距首次发现超过 confirm-after 时才修复，尚未消费的事件不会被当作漂移
+ * 5. 仅 Redis 有：读取状态并分配新序号后发送点赞事件补写 MySQL；仅 MySQL 有：该用户已分配的事件均已落库且不在死信中时，
+ * 视为 Redis 状态丢失并按 MySQL 恢复，否则只上报，从不因此删除点赞
+ * <p>
+ * Redis 中没有任何点赞状态 key 的用户不会被遍历到；领取后处理失败的批次不重新入队，由下一轮覆盖
+ */
 @Service
 @Slf4j
 public class ThumbReconcileJob {
+
+    private static final String FINISHED_SUFFIX = ":finished";
+
+    private static final String REDIS_ONLY = "redis_only";
+
+    private static final String MYSQL_ONLY = "mysql_only";
+
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private ThumbStateStore thumbStateStore;
+
+    @Resource
+    private ThumbBloomFilter thumbBloomFilter;
 
     @Resource
     private ThumbService thumbService;
 
     @Resource
-    private PulsarClient pulsarClient;
+    private ThumbEventWindowMapper thumbEventWindowMapper;
+
+    @Resource
+    private ThumbEventPublisher thumbEventPublisher;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
 
     /**
-     * 定时任务入口（每天凌晨2点执行）
+     * 每批对账的用户数
      */
-    @Scheduled(cron = "0 0 2 * * ?")
+    @Value("${thumb.reconcile.batch-size:200}")
+    private int batchSize;
+
+    @Value("${thumb.reconcile.scan-count:1000}")
+    private int scanCount;
+
+    /**
+     * 每次调度最多入队、领取的批数
+     */
+    @Value("${thumb.reconcile.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 队列中待对账批次达到该值时暂停扫描
+     */
+    @Value("${thumb.reconcile.max-queued-batches:200}")
+    private long maxQueuedBatches;
+
+    /**
+     * 一轮扫描完成后到下一轮开始的间隔（毫秒）
+     */
+    @Value("${thumb.reconcile.round-interval:3600000}")
+    private long roundInterval;
+
+    /**
+     * 差异首次发现后至少经过该时间（毫秒）且下一轮仍存在才修复
+     */
+    @Value("${thumb.reconcile.confirm-after:600000}")
+    private long confirmAfter;
+
+    /**
+     * 待确认差异的保留时间（毫秒），需大于一轮扫描的耗时
+     */
+    @Value("${thumb.reconcile.suspect-ttl:172800000}")
+    private long suspectTtl;
+
+    private Counter usersCounter;
+    private Counter redisOnlyCounter;
+    private Counter mysqlOnlyCounter;
+    private Counter repairedCounter;
+    private Counter restoredCounter;
+    private Counter unresolvedCounter;
+    private Counter failedCounter;
+    private Counter roundsCounter;
+    private Timer batchTimer;
+
+    /**
+     * 本节点最近一次提交游标的时间
+     */
+    private final AtomicLong lastCheckpointTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * 最近一次看到的待对账批次数
+     */
+    private final AtomicLong queuedBatches = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        usersCounter = meterRegistry.counter("thumb.reconcile.users");
+        redisOnlyCounter = meterRegistry.counter("thumb.reconcile.drift", "direction", REDIS_ONLY);
+        mysqlOnlyCounter = meterRegistry.counter("thumb.reconcile.drift", "direction", MYSQL_ONLY);
+        repairedCounter = meterRegistry.counter("thumb.reconcile.repaired", "direction", REDIS_ONLY);
+        restoredCounter = meterRegistry.counter("thumb.reconcile.repaired", "direction", MYSQL_ONLY);
+        unresolvedCounter = meterRegistry.counter("thumb.reconcile.unresolved", "direction", MYSQL_ONLY);
+        failedCounter = meterRegistry.counter("thumb.reconcile.failed");
+        roundsCounter = meterRegistry.counter("thumb.reconcile.rounds");
+        batchTimer = meterRegistry.timer("thumb.reconcile.batch");
+        Gauge.builder("thumb.reconcile.checkpoint.age", lastCheckpointTime,
+                        t -> (System.currentTimeMillis() - t.get()) / 1000.0)
+                .description("本节点距上次提交对账游标的秒数")
+                .register(meterRegistry);
+        Gauge.builder("thumb.reconcile.queue", queuedBatches, AtomicLong::get)
+                .description("待对账的用户批次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 定时任务入口：先尝试扫描入队，再领取批次对账
+     */
+    @Scheduled(fixedDelayString = "${thumb.reconcile.interval:60000}", initialDelay = 60000)
     public void run() {
-        long startTime = System.currentTimeMillis();
-
-        // 1. 获取该分片下的所有用户ID
-        Set<Long> userIds = new HashSet<>();
-        String pattern = ThumbConstant.USER_THUMB_KEY_PREFIX + "*";
-        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(1000).build())) {
-            while (cursor.hasNext()) {
-                String key = cursor.next();
-                Long userId = Long.valueOf(key.replace(ThumbConstant.USER_THUMB_KEY_PREFIX, ""));
-                userIds.add(userId);
-            }
-        }
-
-        // 2. 逐用户比对
-        userIds.forEach(userId -> {
-            Set<Long> redisQuestionIds = redisTemplate.opsForHash().keys(ThumbConstant.USER_THUMB_KEY_PREFIX + userId).stream().map(obj -> Long.valueOf(obj.toString())).collect(Collectors.toSet());
-            Set<Long> mysqlQuestionIds = Optional.ofNullable(thumbService.lambdaQuery()
-                            .eq(Thumb::getUserId, userId)
-                            .list()
-                    ).orElse(new ArrayList<>())
-                    .stream()
-                    .map(Thumb::getQuestionId)
-                    .collect(Collectors.toSet());
-
-            // 3. 计算差异（Redis有但MySQL无）
-            Set<Long> diffQuestionIds = Sets.difference(redisQuestionIds, mysqlQuestionIds);
-
-            // 4. 发送补偿事件
-            sendCompensationEvents(userId, diffQuestionIds);
+        try {
+            scan(ThumbConstant.USER_THUMB_KEY_PREFIX);
+        } catch (Exception e) {
+            // 游标停在上一批，下次调度重试
+            log.error("点赞关系对账扫描失败", e);
+        }
+        drain();
+    }
+
+    /**
+     * 从已提交的游标继续扫描，把用户按批写入队列
+     */
+    private void scan(String prefix) {
+        // 不指定租期，宕机后租约随看门狗停止续期而释放
+        RLock lease = redissonClient.getLock(ThumbConstant.RECONCILE_LEASE_KEY_PREFIX + prefix);
+        if (!lease.tryLock()) {
+            return;
+        }
+        try {
+            Object checkpoint = stringRedisTemplate.opsForHash().get(ThumbConstant.RECONCILE_CHECKPOINT_KEY, prefix);
+            if (checkpoint == null) {
+                Object finished = stringRedisTemplate.opsForHash()
+                        .get(ThumbConstant.RECONCILE_CHECKPOINT_KEY, prefix + FINISHED_SUFFIX);
+                if (finished != null && System.currentTimeMillis() - Long.parseLong(finished.toString()) < roundInterval) {
+                    return;
+                }
+            }
+            String cursor = checkpoint != null ? checkpoint.toString() : "0";
+            String pattern = prefix + "*";
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                Long queued = stringRedisTemplate.opsForList().size(ThumbConstant.RECONCILE_QUEUE_KEY);
+                queuedBatches.set(queued == null ? 0 : queued);
+                if (queued != null && queued >= maxQueuedBatches) {
+                    return;
+                }
+                Set<Long> userIds = new LinkedHashSet<>();
+                do {
+                    cursor = scanPage(cursor, pattern, prefix, userIds);
+                } while (userIds.size() < batchSize && !"0".equals(cursor));
+                if (!userIds.isEmpty()) {
+                    // 先入队再提交游标，中途宕机只会重复入队，对账结果不变
+                    stringRedisTemplate.opsForList().rightPush(ThumbConstant.RECONCILE_QUEUE_KEY,
+                            StringUtils.join(userIds, ','));
+                }
+                if ("0".equals(cursor)) {
+                    stringRedisTemplate.opsForHash().put(ThumbConstant.RECONCILE_CHECKPOINT_KEY,
+                            prefix + FINISHED_SUFFIX, String.valueOf(System.currentTimeMillis()));
+                    stringRedisTemplate.opsForHash().delete(ThumbConstant.RECONCILE_CHECKPOINT_KEY, prefix);
+                    lastCheckpointTime.set(System.currentTimeMillis());
+                    roundsCounter.increment();
+                    log.info("点赞关系对账完成一轮扫描: {}", prefix);
+                    return;
+                }
+                stringRedisTemplate.opsForHash().put(ThumbConstant.RECONCILE_CHECKPOINT_KEY, prefix, cursor);
+                lastCheckpointTime.set(System.currentTimeMillis());
+            }
+        } finally {
+            if (lease.isHeldByCurrentThread()) {
+                lease.unlock();
+            }
+        }
+    }
+
+    /**
+     * 领取并对账有限个批次
+     */
+    private void drain() {
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            String batch = stringRedisTemplate.opsForList().leftPop(ThumbConstant.RECONCILE_QUEUE_KEY);
+            if (batch == null) {
+                return;
+            }
+            Set<Long> userIds = new LinkedHashSet<>();
+            for (String userId : StringUtils.split(batch, ',')) {
+                userIds.add(Long.valueOf(userId));
+            }
+            long begin = System.nanoTime();
+            try {
+                reconcileUsers(userIds);
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("点赞关系对账批次失败，由下一轮覆盖: size={}", userIds.size(), e);
+            }
+            batchTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * SCAN 一页，返回下一游标
+     */
+    private String scanPage(String cursor, String pattern, String prefix, Set<Long> userIds) {
+        List<?> page = stringRedisTemplate.execute(RedisLuaScriptConstant.SCAN_PAGE_SCRIPT,
+                Collections.emptyList(), cursor, pattern, String.valueOf(scanCount));
+        for (Object key : (List<?>) page.get(1)) {
+            String suffix = key.toString().substring(prefix.length());
+            if (StringUtils.isNumeric(suffix)) {
+                userIds.add(Long.valueOf(suffix));
+            }
+        }
+        return page.get(0).toString();
+    }
+
+    /**
+     * 对账一批用户：一次批量读取 Redis、一次 IN 查询 MySQL
+     */
+    private void reconcileUsers(Set<Long> userIds) {
+        Map<Long, Set<Long>> redisThumbs = thumbStateStore.getThumbQuestionIds(userIds);
+        Map<Long, Set<Long>> mysqlThumbs = new HashMap<>(userIds.size() * 2);
+        List<Thumb> thumbs = thumbService.lambdaQuery()
+                .select(Thumb::getUserId, Thumb::getQuestionId)
+                .in(Thumb::getUserId, userIds)
+                .list();
+        for (Thumb thumb : thumbs) {
+            mysqlThumbs.computeIfAbsent(thumb.getUserId(), k -> new HashSet<>()).add(thumb.getQuestionId());
+        }
+        usersCounter.increment(userIds.size());
+
+        // userId -> 题目 id -> 方向
+        Map<Long, Map<String, String>> drifts = new HashMap<>();
+        for (Long userId : userIds) {
+            Set<Long> inRedis = redisThumbs.getOrDefault(userId, Collections.emptySet());
+            Set<Long> inMysql = mysqlThumbs.getOrDefault(userId, Collections.emptySet());
+            for (Long questionId : inRedis) {
+                if (!inMysql.contains(questionId)) {
+                    redisOnlyCounter.increment();
+                    drifts.computeIfAbsent(userId, k -> new HashMap<>()).put(questionId.toString(), REDIS_ONLY);
+                }
+            }
+            for (Long questionId : inMysql) {
+                if (!inRedis.contains(questionId)) {
+                    mysqlOnlyCounter.increment();
+                    drifts.computeIfAbsent(userId, k -> new HashMap<>()).put(questionId.toString(), MYSQL_ONLY);
+                }
+            }
+        }
+        // 本轮已无差异的用户，上一轮留下的待确认记录一并清除
+        List<String> settledKeys = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (!drifts.containsKey(userId)) {
+                settledKeys.add(ThumbConstant.RECONCILE_SUSPECT_KEY_PREFIX + userId);
+            }
+        }
+        if (!settledKeys.isEmpty()) {
+            stringRedisTemplate.delete(settledKeys);
+        }
+        List<Pair<Long, Long>> redisOnly = new ArrayList<>();
+        List<Pair<Long, Long>> mysqlOnly = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        drifts.forEach((userId, current) -> {
+            for (Map.Entry<String, String> drift : confirm(userId, current, now).entrySet()) {
+                Pair<Long, Long> pair = Pair.of(userId, Long.valueOf(drift.getKey()));
+                (REDIS_ONLY.equals(drift.getValue()) ? redisOnly : mysqlOnly).add(pair);
+            }
         });
+        if (!redisOnly.isEmpty()) {
+            repairRedisOnly(redisOnly, now);
+        }
+        if (!mysqlOnly.isEmpty()) {
+            restoreMysqlOnly(mysqlOnly);
+        }
+    }
+
+    /**
+     * Redis 已点赞而 MySQL 缺失：重新读取状态并分配新序号后补发 INCR；
+     * 期间用户已取消的不再补发，之后用户再操作的事件序号更大，补偿事件不会覆盖
+     */
+    private void repairRedisOnly(List<Pair<Long, Long>> pairs, long now) {
+        List<Pair<Boolean, Long>> states = thumbStateStore.snapshotWithSeq(pairs,
+                Collections.nCopies(pairs.size(), Boolean.TRUE));
+        for (int i = 0; i < pairs.size(); i++) {
+            Long seq = states.get(i).getRight();
+            if (seq == null) {
+                continue;
+            }
+            Long userId = pairs.get(i).getLeft();
+            Long questionId = pairs.get(i).getRight();
+            ThumbEvent thumbEvent = new ThumbEvent(userId, questionId, ThumbEvent.EventType.INCR, now, seq);
+            try {
+                publish(thumbEvent);
+                repairedCounter.increment();
+            } catch (BusinessException e) {
+                log.error("补偿事件发送失败: userId={}, questionId={}", userId, questionId, e);
+            }
+        }
+    }
+
+    /**
+     * MySQL 已点赞而 Redis 缺失：修复前再读一次 Redis，期间用户又操作过的交给正常链路。
+     * 取消点赞可能尚未落库（消费积压、进入死信），只有该用户已分配的序号全部落库且死信中没有该点赞关系时，
+     * 才能认定是 Redis 状态丢失并按 MySQL 恢复；否则只上报，不写入
+     */
+    private void restoreMysqlOnly(List<Pair<Long, Long>> pairs) {
+        List<Boolean> state = thumbStateStore.hasThumbs(pairs);
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (Pair<Long, Long> pair : pairs) {
+            userIds.add(pair.getLeft());
+        }
+        Set<Long> settled = settledUsers(userIds);
+        for (int i = 0; i < pairs.size(); i++) {
+            if (state.get(i)) {
+                continue;
+            }
+            Long userId = pairs.get(i).getLeft();
+            Long questionId = pairs.get(i).getRight();
+            if (!settled.contains(userId) || stringRedisTemplate.opsForList()
+                    .indexOf(ThumbConstant.DLQ_PENDING_KEY, userId + ":" + questionId) != null) {
+                unresolvedCounter.increment();
+                log.warn("点赞关系差异存在未落库事件，暂不修复: userId={}, questionId={}", userId, questionId);
+                continue;
+            }
+            // Redis 缺少字段不能证明点赞已取消，按 MySQL 恢复；先写布隆过滤器，恢复后不会被判定为未点赞
+            thumbBloomFilter.put(userId, questionId);
+            thumbStateStore.setThumb(userId, questionId, true);
+            restoredCounter.increment();
+            log.warn("按 MySQL 恢复 Redis 点赞状态: userId={}, questionId={}", userId, questionId);
+        }
+    }
+
+    /**
+     * Redis 已分配的事件序号均已落库的用户；序号键不存在时说明 Redis 状态已整体丢失，没有可等待的事件
+     */
+    private Set<Long> settledUsers(Set<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        List<String> seqKeys = new ArrayList<>(ids.size());
+        for (Long userId : ids) {
+            seqKeys.add(RedisKeyUtil.getUserThumbSeqKey(userId));
+        }
+        List<String> issued = stringRedisTemplate.opsForValue().multiGet(seqKeys);
+        Map<Long, Long> appliedSeqs = new HashMap<>(ids.size() * 2);
+        for (ThumbEventWindow row : thumbEventWindowMapper.selectBatchIds(ids)) {
+            appliedSeqs.put(row.getUserId(), ThumbSeqWindow.decode(row.getBaseSeq(), row.getApplied()).getMaxSeq());
+        }
+        Set<Long> settled = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String seq = issued == null ? null : issued.get(i);
+            if (seq == null || Long.parseLong(seq) <= appliedSeqs.getOrDefault(ids.get(i), 0L)) {
+                settled.add(ids.get(i));
+            }
+        }
+        return settled;
+    }
 
-        log.info("对账任务完成，耗时 {}ms", System.currentTimeMillis() - startTime);
+    /**
+     * 与上一轮记录的差异比较，返回已确认的差异，其余写回待确认
+     *
+     * @param current 题目 id -> 方向
+     */
+    private Map<String, String> confirm(Long userId, Map<String, String> current, long now) {
+        String key = ThumbConstant.RECONCILE_SUSPECT_KEY_PREFIX + userId;
+        Map<Object, Object> previous = stringRedisTemplate.opsForHash().entries(key);
+        Map<String, String> confirmed = new HashMap<>();
+        Map<String, String> pending = new HashMap<>();
+        current.forEach((questionId, direction) -> {
+            Object seen = previous.get(questionId);
+            long firstSeen = now;
+            if (seen != null && seen.toString().startsWith(direction + ":")) {
+                firstSeen = Long.parseLong(seen.toString().substring(direction.length() + 1));
+            }
+            if (now - firstSeen >= confirmAfter) {
+                confirmed.put(questionId, direction);
+            } else {
+                pending.put(questionId, direction + ":" + firstSeen);
+            }
+        });
+        // 上一轮的差异本轮已消失的直接丢弃
+        stringRedisTemplate.delete(key);
+        if (!pending.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(key, pending);
+            stringRedisTemplate.expire(key, suspectTtl, TimeUnit.MILLISECONDS);
+        }
+        return confirmed;
     }
 
     /**
-     * 发送补偿事件到Pulsar
+     * 生产者队列满时先等待在途消息发出，再重试一次
      */
-    private void sendCompensationEvents(Long userId, Set<Long> questionIds) {
-        try (Producer<ThumbEvent> producer = pulsarClient.newProducer(Schema.JSON(ThumbEvent.class))
-                .topic("thumb-topic")
-                .create()) {
-            questionIds.forEach(questionId -> {
-                ThumbEvent thumbEvent = new ThumbEvent(userId, questionId, ThumbEvent.EventType.INCR, LocalDateTime.now());
-                producer.sendAsync(thumbEvent)
-                        .exceptionally(ex -> {
-                            log.error("补偿事件发送失败: userId={}, questionId={}", userId, questionId, ex);
-                            return null;
-                        });
-            });
-        } catch (PulsarClientException e) {
-            log.error("初始化Pulsar生产者失败", e);
+    private void publish(ThumbEvent thumbEvent) {
+        try {
+            thumbEventPublisher.publish(thumbEvent).exceptionally(this::logSendFailure);
+        } catch (BusinessException e) {
+            thumbEventPublisher.flush();
+            thumbEventPublisher.publish(thumbEvent).exceptionally(this::logSendFailure);
         }
     }
+
+    private MessageId logSendFailure(Throwable ex) {
+        log.error("补偿事件发送失败", ex);
+        return null;
+    }
 }
@@ -1,50 +1,28 @@
 package com.tudou.tudoumianshi.job.once;
 
 
-import cn.hutool.core.collection.CollUtil;
-import com.tudou.tudoumianshi.esdao.QuestionEsDao;
-import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
-import com.tudou.tudoumianshi.model.entity.Question;
-import com.tudou.tudoumianshi.service.QuestionService;
+import com.tudou.tudoumianshi.manager.QuestionEsIndexLifecycleManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 
 import javax.annotation.Resource;
-import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * 全量同步题目到 ES：新建下一个版本的索引，回填完成后将 question 别名原子切换过去，旧版本保留用于回滚
+ */
 // todo 取消注释开启任务
 //@Component
 @Slf4j
 public class FullSyncQuestionToEs implements CommandLineRunner {
 
     @Resource
-    private QuestionService questionService;
-
-    @Resource
-    private QuestionEsDao questionEsDao;
+    private QuestionEsIndexLifecycleManager questionEsIndexLifecycleManager;
 
     @Override
-    public void run(String... args) {
-        // 全量获取题目（数据量不大的情况下使用）
-        List<Question> questionList = questionService.list();
-        if (CollUtil.isEmpty(questionList)) {
-            return;
-        }
-        // 转为 ES 实体类
-        List<QuestionEsDTO> questionEsDTOList = questionList.stream()
-                .map(QuestionEsDTO::objToDto)
-                .collect(Collectors.toList());
-        // 分页批量插入到 ES
-        final int pageSize = 500;
-        int total = questionEsDTOList.size();
-        log.info("FullSyncQuestionToEs start, total {}", total);
-        for (int i = 0; i < total; i += pageSize) {
-            // 注意同步的数据下标不能超过总数据量
-            int end = Math.min(i + pageSize, total);
-            log.info("sync from {} to {}", i, end);
-            questionEsDao.saveAll(questionEsDTOList.subList(i, end));
-        }
-        log.info("FullSyncQuestionToEs end, total {}", total);
+    public void run(String... args) throws Exception {
+        long start = System.currentTimeMillis();
+        log.info("FullSyncQuestionToEs start");
+        String index = questionEsIndexLifecycleManager.rollover();
+        log.info("FullSyncQuestionToEs end, index {}, cost {}ms", index, System.currentTimeMillis() - start);
     }
 }
@@ -1,39 +1,69 @@
 package com.tudou.tudoumianshi.listener;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.tudou.tudoumianshi.listener.thumb.ThumbEvent;
-import com.tudou.tudoumianshi.mapper.QuestionMapper;
-import com.tudou.tudoumianshi.model.entity.Thumb;
-import com.tudou.tudoumianshi.service.ThumbService;
+import com.tudou.tudoumianshi.listener.thumb.ThumbEventSchema;
+import com.tudou.tudoumianshi.listener.thumb.ThumbSeqWindow;
+import com.tudou.tudoumianshi.manager.ThumbPersistManager;
+import com.tudou.tudoumianshi.mapper.ThumbEventWindowMapper;
+import com.tudou.tudoumianshi.model.entity.ThumbEventWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.api.PulsarClientException.AlreadyClosedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
-import org.apache.pulsar.client.api.PulsarClientException.AlreadyClosedException;
-import java.util.stream.Collectors;
-import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 点赞事件消费者
+ * <p>
+ * 1. 在 Key_Shared 订阅上启动多个消费者，同一用户的事件只会投递给同一个消费者
+ * 2. 每批消息按 userId 拆分到有界工作线程池并行落库，每个子批次一个事务，全部完成后再确认，保证同一用户有序
+ * 3. 落库失败的子批次 nack，超过重试次数进入死信队列
+ * 4. 事件带用户内单调序号，每个用户已落库的序号窗口存于 thumb_event_window，与落库同一事务加锁读取和更新，
+ * 重复投递的序号跳过，乱序到达的旧序号仍会处理；落库按最终状态执行，点赞数只随实际变更的记录变化
+ * <p>
+ * 订阅类型不能原地从 Shared 改为 Key_Shared（broker 会拒绝），因此使用新订阅名 thumb-subscription-key-shared。
+ * 从旧版本迁移：
+ * 1. 停止旧节点消费，用 pulsar-admin topics stats-internal thumb-topic 取旧订阅 thumb-subscription 的 markDeletePosition；
+ * 2. 在该位置创建新订阅：pulsar-admin topics create-subscription thumb-topic -s thumb-subscription-key-shared -m {ledgerId}:{entryId}，
+ * 旧订阅在该位置之后单独确认过的消息会再投递一次，新版本按最终状态和序号窗口落库，不会重复计数；
+ * 3. 发布新节点，确认消费正常后删除旧订阅：pulsar-admin topics unsubscribe thumb-topic -s thumb-subscription。
+ * 旧版本按事件累加点赞数，新旧节点不能同时消费，否则同一消息在两个订阅上各处理一次。
+ * 订阅失败时启动失败，不会带着空消费者运行
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ThumbConsumer {
 
-    private final QuestionMapper questionMapper;
-    private final ThumbService thumbService;
     private final PulsarClient pulsarClient;
+    private final ThumbPersistManager thumbPersistManager;
     @Resource
     private BatchReceivePolicy batchReceivePolicy;
     @Resource
@@ -42,208 +72,342 @@ public class ThumbConsumer {
     private RedeliveryBackoff ackTimeoutRedeliveryBackoff;
     @Resource
     private DeadLetterPolicy deadLetterPolicy;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private ThumbEventWindowMapper thumbEventWindowMapper;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${thumb.consumer.topic:thumb-topic}")
+    private String topic;
+
+    /**
+     * Key_Shared 订阅名，不可与已存在的其他类型订阅同名
+     */
+    @Value("${thumb.consumer.subscription:thumb-subscription-key-shared}")
+    private String subscription;
+
+    /**
+     * 消费者（拉取线程）数量
+     */
+    @Value("${thumb.consumer.consumers:2}")
+    private int consumerCount;
+
+    /**
+     * 落库工作线程数
+     */
+    @Value("${thumb.consumer.workers:4}")
+    private int workerCount;
+
+    /**
+     * 工作线程池队列长度，队列满时由拉取线程自己执行，自然限流
+     */
+    @Value("${thumb.consumer.queue-capacity:16}")
+    private int queueCapacity;
+
+    /**
+     * 空轮询退避的上下限（毫秒）
+     */
+    @Value("${thumb.consumer.min-idle-backoff:10}")
+    private long minIdleBackoff;
+
+    @Value("${thumb.consumer.max-idle-backoff:1000}")
+    private long maxIdleBackoff;
+
+    /**
+     * 停机时等待在途批次完成的时间（毫秒）
+     */
+    @Value("${thumb.consumer.drain-timeout:30000}")
+    private long drainTimeout;
+
+    private final List<Consumer<ThumbEvent>> consumers = new ArrayList<>();
+
+    private ExecutorService pollers;
+
+    private ThreadPoolExecutor workers;
 
-    private Consumer<byte[]> consumer;
     // 控制接收线程的运行状态
     private volatile boolean running = true;
 
+    /**
+     * 分区 -> 最近一条已处理消息的发布延迟（毫秒）
+     */
+    private final Map<String, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+
+    /**
+     * 每个用户去重窗口的序号跨度，落后最新序号超过该值仍未到达的事件视为丢失
+     */
+    @Value("${thumb.consumer.dedup-window:1024}")
+    private int dedupWindow;
+
+    private Counter processedCounter;
+    private Counter failedCounter;
+    private Counter duplicateCounter;
+    private Timer batchTimer;
+
     @PostConstruct
     public void init() {
+        processedCounter = meterRegistry.counter("thumb.consumer.processed");
+        failedCounter = meterRegistry.counter("thumb.consumer.failed");
+        duplicateCounter = meterRegistry.counter("thumb.consumer.duplicate");
+        batchTimer = meterRegistry.timer("thumb.consumer.batch");
+
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("thumb-worker-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        Gauge.builder("thumb.consumer.worker.queue", workers, w -> w.getQueue().size())
+                .register(meterRegistry);
+        pollers = Executors.newFixedThreadPool(consumerCount, new CustomizableThreadFactory("thumb-poller-"));
         try {
-            consumer = pulsarClient.newConsumer()
-                    .topic("thumb-topic")
-                    .subscriptionName("thumb-subscription")
-                    .subscriptionType(SubscriptionType.Shared)
-                    .batchReceivePolicy(batchReceivePolicy)
-                    .negativeAckRedeliveryBackoff(negativeAckRedeliveryBackoff)
-                    .ackTimeoutRedeliveryBackoff(ackTimeoutRedeliveryBackoff)
-                    .deadLetterPolicy(deadLetterPolicy)
-                    .subscribe();
-
-            // 启动一个线程来处理消息
-            new Thread(this::receiveMessages).start();
+            for (int i = 0; i < consumerCount; i++) {
+                Consumer<ThumbEvent> consumer = pulsarClient.newConsumer(ThumbEventSchema.INSTANCE)
+                        .topic(topic)
+                        .subscriptionName(subscription)
+                        .subscriptionType(SubscriptionType.Key_Shared)
+                        .consumerName("thumb-consumer-" + i)
+                        .batchReceivePolicy(batchReceivePolicy)
+                        .negativeAckRedeliveryBackoff(negativeAckRedeliveryBackoff)
+                        .ackTimeoutRedeliveryBackoff(ackTimeoutRedeliveryBackoff)
+                        .deadLetterPolicy(deadLetterPolicy)
+                        .subscribe();
+                consumers.add(consumer);
+                Gauge.builder("thumb.consumer.receiver.queue", consumer, c -> c.getStats().getMsgNumInReceiverQueue())
+                        .tag("consumer", consumer.getConsumerName())
+                        .register(meterRegistry);
+                pollers.execute(() -> receiveMessages(consumer));
+            }
+            log.info("点赞消费者启动: subscription={}, consumers={}, workers={}", subscription, consumerCount, workerCount);
         } catch (PulsarClientException e) {
-            log.error("初始化Pulsar消费者失败", e);
+            // 初始化失败时不会回调 destroy，自行释放已创建的消费者和线程池
+            running = false;
+            pollers.shutdownNow();
+            workers.shutdownNow();
+            for (Consumer<ThumbEvent> consumer : consumers) {
+                consumer.closeAsync();
+            }
+            throw new IllegalStateException("订阅点赞主题失败: subscription=" + subscription, e);
         }
     }
 
+    /**
+     * 停止拉取，等待在途批次落库并确认后再关闭消费者，未确认的消息由 broker 重新投递
+     */
     @PreDestroy
     public void destroy() {
-        // 停止消息接收循环
         running = false;
+        pollers.shutdown();
         try {
-            if (consumer != null) {
+            if (!pollers.awaitTermination(drainTimeout, TimeUnit.MILLISECONDS)) {
+                log.warn("等待点赞消费者排空超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        for (Consumer<ThumbEvent> consumer : consumers) {
+            try {
                 consumer.close();
+            } catch (PulsarClientException e) {
+                log.error("关闭Pulsar消费者失败", e);
             }
-        } catch (PulsarClientException e) {
-            log.error("关闭Pulsar消费者失败", e);
         }
     }
 
-    private void receiveMessages() {
-        try {
-            while (running) {
-                try {
-                    // 批量接收消息
-                    Messages<byte[]> messages = consumer.batchReceive();
-                    if (messages != null) {
-                        List<Message<byte[]>> messageList = new ArrayList<>();
-                        for (Message<byte[]> msg : messages) {
-                            messageList.add(msg);
-                        }
-
-                        if (!messageList.isEmpty()) {
-                            processBatch(messageList);
-                            // 确认消息
-                            for (Message<byte[]> msg : messageList) {
-                                consumer.acknowledge(msg);
-                            }
-                        }
-                    }
-                } catch (AlreadyClosedException e) {
-                    log.info("Pulsar Consumer 已关闭，退出接收循环");
-                    break;
-                } catch (Exception e) {
-                    log.error("处理消息失败", e);
-                }
-
-                // 防止CPU占用过高
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+    private void receiveMessages(Consumer<ThumbEvent> consumer) {
+        long idleBackoff = 0;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            Messages<ThumbEvent> messages;
+            try {
+                // 批量接收消息，阻塞时间由 BatchReceivePolicy 控制
+                messages = consumer.batchReceive();
+            } catch (AlreadyClosedException e) {
+                log.info("Pulsar Consumer 已关闭，退出接收循环");
+                break;
+            } catch (PulsarClientException e) {
+                log.error("接收消息失败", e);
+                sleep(maxIdleBackoff);
+                continue;
+            }
+            // 有消息时立即拉取下一批，连续空轮询时指数退避
+            if (messages == null || messages.size() == 0) {
+                idleBackoff = idleBackoff == 0 ? minIdleBackoff : Math.min(idleBackoff * 2, maxIdleBackoff);
+                sleep(idleBackoff);
+                continue;
+            }
+            idleBackoff = 0;
+            try {
+                processBatch(consumer, messages);
+            } catch (Exception e) {
+                log.error("处理消息失败", e);
+                consumer.negativeAcknowledge(messages);
             }
-        } catch (Exception e) {
-            log.error("消息接收线程异常退出", e);
         }
     }
 
-    @Transactional(rollbackFor = Exception.class)
-    public void processBatch(List<Message<byte[]>> messages) {
-        log.info("ThumbConsumer processBatch: {}", messages.size());
-        Map<Long, Long> countMap = new ConcurrentHashMap<>();
-        List<Thumb> thumbs = new ArrayList<>();
-
-        // 并行处理消息
-        LambdaQueryWrapper<Thumb> wrapper = new LambdaQueryWrapper<>();
-        AtomicReference<Boolean> needRemove = new AtomicReference<>(false);
+    private void processBatch(Consumer<ThumbEvent> consumer, Messages<ThumbEvent> messages) {
+        long start = System.nanoTime();
+        // 按 userId 拆分子批次，同一用户的事件在同一个工作线程中按序处理
+        Map<Integer, List<Message<ThumbEvent>>> shards = new HashMap<>();
+        for (Message<ThumbEvent> message : messages) {
+            ThumbEvent event;
+            try {
+                // 由 ThumbEventSchema 解码
+                event = message.getValue();
+            } catch (SchemaSerializationException e) {
+                log.error("解析消息失败: messageId={}", message.getMessageId(), e);
+                failedCounter.increment();
+                consumer.negativeAcknowledge(message);
+                continue;
+            }
+            int shard = (int) Math.floorMod(event.getUserId(), (long) workerCount);
+            shards.computeIfAbsent(shard, k -> new ArrayList<>()).add(message);
+        }
 
-        // 提取事件并过滤无效消息
-        List<ThumbEvent> events = new ArrayList<>();
+        List<List<Message<ThumbEvent>>> shardList = new ArrayList<>(shards.values());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shardList.size());
+        for (List<Message<ThumbEvent>> shard : shardList) {
+            futures.add(CompletableFuture.runAsync(() -> applyInTransaction(shard), workers));
+        }
 
-        for (Message<byte[]> message : messages) {
+        List<MessageId> acked = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            List<Message<ThumbEvent>> shard = shardList.get(i);
             try {
-                // 将消息转换为ThumbEvent对象
-                String jsonStr = new String(message.getData());
-                ThumbEvent event = parseJsonToThumbEvent(jsonStr);
-                if (event != null) {
-                    events.add(event);
+                futures.get(i).join();
+                for (Message<ThumbEvent> message : shard) {
+                    acked.add(message.getMessageId());
                 }
+                processedCounter.increment(shard.size());
+                recordLag(shard);
             } catch (Exception e) {
-                log.error("解析消息失败", e);
+                log.error("点赞事件落库失败: size={}", shard.size(), e);
+                failedCounter.increment(shard.size());
+                for (Message<ThumbEvent> message : shard) {
+                    consumer.negativeAcknowledge(message);
+                }
             }
         }
-
-        // 分组处理每个 (userId, questionId)，支持切换场景：先删除再插入
-        Map<Pair<Long, Long>, List<ThumbEvent>> grouped = new HashMap<>();
-        for (ThumbEvent evt : events) {
-            Pair<Long, Long> key = Pair.of(evt.getUserId(), evt.getQuestionId());
-            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(evt);
-        }
-        grouped.forEach((userQuestionPair, evts) -> {
-            // 按时间排序
-            evts.sort(Comparator.comparing(ThumbEvent::getEventTime));
-            ThumbEvent last = evts.get(evts.size() - 1);
-            boolean hasDecr = evts.stream().anyMatch(e -> e.getType() == ThumbEvent.EventType.DECR);
-            if (hasDecr) {
-                needRemove.set(true);
-                wrapper.or()
-                    .eq(Thumb::getUserId, userQuestionPair.getLeft())
-                    .eq(Thumb::getQuestionId, userQuestionPair.getRight());
+        if (!acked.isEmpty()) {
+            try {
+                consumer.acknowledge(acked);
+            } catch (PulsarClientException e) {
+                // 确认失败的消息会在 ack 超时后重新投递
+                log.error("确认消息失败: size={}", acked.size(), e);
             }
-            if (last.getType() == ThumbEvent.EventType.INCR) {
-                countMap.merge(userQuestionPair.getRight(), 1L, Long::sum);
-                Thumb thumb = new Thumb();
-                thumb.setQuestionId(userQuestionPair.getRight());
-                thumb.setUserId(userQuestionPair.getLeft());
-                thumbs.add(thumb);
-            } else {
-                // 最终为取消操作
-                countMap.merge(userQuestionPair.getRight(), -1L, Long::sum);
+        }
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void applyInTransaction(List<Message<ThumbEvent>> messages) {
+        List<ThumbEvent> events = new ArrayList<>(messages.size());
+        for (Message<ThumbEvent> message : messages) {
+            events.add(message.getValue());
+        }
+        // 同一用户按序号处理，窗口按序推进
+        events.sort(Comparator.comparing(ThumbEvent::getUserId)
+                .thenComparing(ThumbEvent::getSeq, Comparator.nullsLast(Comparator.naturalOrder())));
+        Integer skipped = transactionTemplate.execute(status -> {
+            List<ThumbEvent> fresh = filterApplied(events);
+            if (!fresh.isEmpty()) {
+                applyEvents(fresh);
             }
+            return events.size() - fresh.size();
         });
-
-        // 批量更新数据库
-        if (needRemove.get()) {
-            thumbService.remove(wrapper);
+        if (skipped != null && skipped > 0) {
+            duplicateCounter.increment(skipped);
         }
-        batchUpdateQuestions(countMap);
-        batchInsertThumbs(thumbs);
     }
 
-    private ThumbEvent parseJsonToThumbEvent(String json) {
-        try {
-            // 简单的JSON解析实现
-            if (json == null || json.isEmpty()) {
-                return null;
+    /**
+     * 在事务内锁定相关用户的序号窗口，过滤已落库或已过期的事件，并写回窗口
+     * <p>
+     * 无序号的事件（旧版消息）不参与去重；重放、补偿事件也带有序号，与用户事件一同排序
+     */
+    private List<ThumbEvent> filterApplied(List<ThumbEvent> events) {
+        Set<Long> userIds = new TreeSet<>();
+        for (ThumbEvent event : events) {
+            if (event.getSeq() != null) {
+                userIds.add(event.getUserId());
+            }
+        }
+        if (userIds.isEmpty()) {
+            return events;
+        }
+        // 先补齐空窗口，加锁只落在已存在的记录上，不产生间隙锁
+        thumbEventWindowMapper.insertIgnoreEmpty(userIds);
+        Map<Long, ThumbSeqWindow> windows = new HashMap<>(userIds.size() * 2);
+        for (ThumbEventWindow row : thumbEventWindowMapper.lockWindows(userIds)) {
+            windows.put(row.getUserId(), ThumbSeqWindow.decode(row.getBaseSeq(), row.getApplied()));
+        }
+        List<ThumbEvent> fresh = new ArrayList<>(events.size());
+        for (ThumbEvent event : events) {
+            if (event.getSeq() == null
+                    || windows.get(event.getUserId()).offer(event.getSeq(), event.getQuestionId(), dedupWindow)
+                    == ThumbSeqWindow.Result.APPLY) {
+                fresh.add(event);
+            }
+        }
+        List<ThumbEventWindow> changed = new ArrayList<>();
+        windows.forEach((userId, window) -> {
+            if (window.isChanged()) {
+                ThumbEventWindow row = new ThumbEventWindow();
+                row.setUserId(userId);
+                row.setBaseSeq(window.getBaseSeq());
+                row.setApplied(window.encodeApplied());
+                changed.add(row);
             }
+        });
+        if (!changed.isEmpty()) {
+            thumbEventWindowMapper.updateWindows(changed);
+        }
+        return fresh;
+    }
+
+    private void recordLag(List<Message<ThumbEvent>> messages) {
+        Message<ThumbEvent> last = messages.get(messages.size() - 1);
+        String partition = last.getTopicName();
+        AtomicLong lag = partitionLag.computeIfAbsent(partition, p -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("thumb.consumer.lag", value, AtomicLong::get)
+                    .tag("partition", p)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return value;
+        });
+        lag.set(System.currentTimeMillis() - last.getPublishTime());
+    }
 
-            ThumbEvent event = new ThumbEvent();
-
-            // 解析questionId
-            int questionIdStart = json.indexOf("\"questionId\":") + 13;
-            int questionIdEnd = json.indexOf(",", questionIdStart);
-            String questionIdStr = json.substring(questionIdStart, questionIdEnd);
-            event.setQuestionId(Long.parseLong(questionIdStr));
-
-            // 解析userId
-            int userIdStart = json.indexOf("\"userId\":") + 9;
-            int userIdEnd = json.indexOf(",", userIdStart);
-            String userIdStr = json.substring(userIdStart, userIdEnd);
-            event.setUserId(Long.parseLong(userIdStr));
-
-            // 解析type
-            int typeStart = json.indexOf("\"type\":\"") + 8;
-            int typeEnd = json.indexOf("\"", typeStart);
-            String typeStr = json.substring(typeStart, typeEnd);
-            event.setType(ThumbEvent.EventType.valueOf(typeStr));
-
-            // 解析eventTime
-            int timeStart = json.indexOf("\"eventTime\":\"") + 13;
-            int timeEnd = json.indexOf("\"", timeStart);
-            String timeStr = json.substring(timeStart, timeEnd);
-            event.setEventTime(LocalDateTime.parse(timeStr));
-
-            return event;
-        } catch (Exception e) {
-            log.error("解析ThumbEvent失败: {}", json, e);
-            return null;
+    private void applyEvents(List<ThumbEvent> events) {
+        log.debug("ThumbConsumer applyEvents: {}", events.size());
+        // 每个 (userId, questionId) 只保留最后一个事件
+        Map<Pair<Long, Long>, ThumbEvent> latest = new HashMap<>();
+        for (ThumbEvent evt : events) {
+            latest.merge(Pair.of(evt.getUserId(), evt.getQuestionId()), evt,
+                    (current, candidate) -> isAfter(candidate, current) ? candidate : current);
         }
+        Map<Pair<Long, Long>, Boolean> finalStates = new HashMap<>(latest.size() * 2);
+        latest.forEach((pair, evt) -> finalStates.put(pair, evt.getType() == ThumbEvent.EventType.INCR));
+        // 点赞数只按实际新增 / 删除的记录计算，重复事件不会改变计数
+        thumbPersistManager.apply(finalStates);
     }
 
-    public void batchUpdateQuestions(Map<Long, Long> countMap) {
-        if (!countMap.isEmpty()) {
-            questionMapper.batchUpdateThumbCount(countMap);
+    /**
+     * 同一用户的事件都有序号时按序号比较，否则按事件时间，时间相同时后到的为准
+     */
+    private static boolean isAfter(ThumbEvent candidate, ThumbEvent current) {
+        if (candidate.getSeq() != null && current.getSeq() != null) {
+            return candidate.getSeq() > current.getSeq();
         }
+        return candidate.getEventTime() >= current.getEventTime();
     }
 
-    public void batchInsertThumbs(List<Thumb> thumbs) {
-        if (thumbs.isEmpty()) {
-            return;
-        }
-        // 过滤掉数据库中已存在的(userId,questionId)组合，避免主键冲突
-        List<Thumb> toInsert = thumbs.stream()
-            .filter(t -> thumbService.count(
-                new LambdaQueryWrapper<Thumb>()
-                    .eq(Thumb::getUserId, t.getUserId())
-                    .eq(Thumb::getQuestionId, t.getQuestionId())
-            ) == 0)
-            .collect(Collectors.toList());
-        if (!toInsert.isEmpty()) {
-            // 分批次插入
-            thumbService.saveBatch(toInsert, 500);
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
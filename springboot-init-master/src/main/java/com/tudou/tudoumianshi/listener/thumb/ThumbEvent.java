@@ -6,7 +6,6 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
-import java.time.LocalDateTime;
 
 @Data
 @Builder
@@ -30,9 +29,14 @@ public class ThumbEvent implements Serializable {
     private EventType type;
 
     /**
-     * 事件发生时间
+     * 事件发生时间（epoch 毫秒）
      */
-    private LocalDateTime eventTime;
+    private Long eventTime;
+
+    /**
+     * 用户内单调递增的事件序号，为空表示无序号（旧版消息），消费端按状态幂等处理
+     */
+    private Long seq;
 
     /**
      * 事件类型枚举
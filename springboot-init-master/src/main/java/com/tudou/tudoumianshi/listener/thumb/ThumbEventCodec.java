@@ -0,0 +1,174 @@
+package com.tudou.tudoumianshi.listener.thumb;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * 点赞事件二进制编解码
+ * <p>
+ * v1 布局：version(1B) | type(1B) | userId(varlong) | questionId(varlong) | eventTime(8B, epoch 毫秒, 大端)
+ * <br>
+ * v2 布局：version(1B) | type(1B) | userId(varlong) | questionId(varlong) | seq(varlong, 0 表示无) | eventTime(8B)
+ * <p>
+ * 首字节为 '{' 时按旧版 JSON 消息解析，兼容升级前已在 topic 中的消息
+ */
+public final class ThumbEventCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    public static final byte VERSION_2 = 2;
+
+    public static final byte CURRENT_VERSION = VERSION_2;
+
+    /**
+     * 单条事件编码后的最大字节数
+     */
+    public static final int MAX_ENCODED_SIZE = 1 + 1 + 10 + 10 + 10 + 8;
+
+    private static final byte TYPE_INCR = 1;
+
+    private static final byte TYPE_DECR = 2;
+
+    private static final byte LEGACY_JSON_START = '{';
+
+    private ThumbEventCodec() {
+    }
+
+    public static byte[] encode(ThumbEvent event) {
+        if (event == null || event.getUserId() == null || event.getQuestionId() == null || event.getType() == null) {
+            throw new IllegalArgumentException("点赞事件字段不完整: " + event);
+        }
+        byte[] buf = new byte[MAX_ENCODED_SIZE];
+        int pos = 0;
+        buf[pos++] = CURRENT_VERSION;
+        buf[pos++] = event.getType() == ThumbEvent.EventType.INCR ? TYPE_INCR : TYPE_DECR;
+        pos = writeVarLong(buf, pos, event.getUserId());
+        pos = writeVarLong(buf, pos, event.getQuestionId());
+        pos = writeVarLong(buf, pos, event.getSeq() != null ? event.getSeq() : 0L);
+        long eventTime = event.getEventTime() != null ? event.getEventTime() : System.currentTimeMillis();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[pos++] = (byte) (eventTime >>> shift);
+        }
+        return pos == buf.length ? buf : Arrays.copyOf(buf, pos);
+    }
+
+    public static ThumbEvent decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("点赞事件为空");
+        }
+        byte version = bytes[0];
+        if (version == LEGACY_JSON_START) {
+            return decodeLegacyJson(bytes);
+        }
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IllegalArgumentException("不支持的点赞事件版本: " + version);
+        }
+        Reader reader = new Reader(bytes, 1);
+        ThumbEvent event = new ThumbEvent();
+        event.setType(toEventType(reader.readByte()));
+        event.setUserId(reader.readVarLong());
+        event.setQuestionId(reader.readVarLong());
+        if (version >= VERSION_2) {
+            long seq = reader.readVarLong();
+            event.setSeq(seq > 0 ? seq : null);
+        }
+        event.setEventTime(reader.readLong());
+        return event;
+    }
+
+    private static ThumbEvent.EventType toEventType(byte type) {
+        switch (type) {
+            case TYPE_INCR:
+                return ThumbEvent.EventType.INCR;
+            case TYPE_DECR:
+                return ThumbEvent.EventType.DECR;
+            default:
+                throw new IllegalArgumentException("未知的点赞事件类型: " + type);
+        }
+    }
+
+    /**
+     * 无符号 LEB128，每字节 7 位，id 通常 3~9 字节
+     */
+    private static int writeVarLong(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * 旧版消息：{"questionId":1,"userId":2,"type":"INCR","eventTime":"2024-01-01T00:00:00"}
+     */
+    private static ThumbEvent decodeLegacyJson(byte[] bytes) {
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        ThumbEvent event = new ThumbEvent();
+        event.setUserId(json.getLong("userId"));
+        event.setQuestionId(json.getLong("questionId"));
+        event.setType(ThumbEvent.EventType.valueOf(json.getStr("type")));
+        Object eventTime = json.get("eventTime");
+        if (eventTime instanceof Number) {
+            event.setEventTime(((Number) eventTime).longValue());
+        } else if (eventTime instanceof String) {
+            event.setEventTime(LocalDateTime.parse((String) eventTime)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        } else {
+            event.setEventTime(System.currentTimeMillis());
+        }
+        if (event.getUserId() == null || event.getQuestionId() == null) {
+            throw new IllegalArgumentException("旧版点赞事件字段不完整");
+        }
+        return event;
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            checkRemaining(1);
+            return buf[pos++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varlong 过长");
+        }
+
+        long readLong() {
+            checkRemaining(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        private void checkRemaining(int n) {
+            if (buf.length - pos < n) {
+                throw new IllegalArgumentException("点赞事件数据被截断");
+            }
+        }
+    }
+}
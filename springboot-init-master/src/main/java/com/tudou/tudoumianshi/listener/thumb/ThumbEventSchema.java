@@ -0,0 +1,61 @@
+package com.tudou.tudoumianshi.listener.thumb;
+
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+
+import java.util.Collections;
+
+/**
+ * thumb-topic 的 Pulsar Schema，生产者、消费者和对账任务共用
+ * <p>
+ * 版本号写在消息首字节，由 ThumbEventCodec 负责兼容，注册到 broker 的类型为 BYTES
+ */
+public class ThumbEventSchema implements Schema<ThumbEvent> {
+
+    public static final ThumbEventSchema INSTANCE = new ThumbEventSchema();
+
+    private static final SchemaInfo SCHEMA_INFO = SchemaInfo.builder()
+            .name("ThumbEvent")
+            .type(SchemaType.BYTES)
+            .schema(new byte[0])
+            .properties(Collections.singletonMap("codec.version", String.valueOf(ThumbEventCodec.CURRENT_VERSION)))
+            .build();
+
+    @Override
+    public byte[] encode(ThumbEvent event) {
+        try {
+            return ThumbEventCodec.encode(event);
+        } catch (IllegalArgumentException e) {
+            throw new SchemaSerializationException(e);
+        }
+    }
+
+    @Override
+    public ThumbEvent decode(byte[] bytes) {
+        try {
+            return ThumbEventCodec.decode(bytes);
+        } catch (RuntimeException e) {
+            throw new SchemaSerializationException(e);
+        }
+    }
+
+    @Override
+    public ThumbEvent decode(byte[] bytes, byte[] schemaVersion) {
+        return decode(bytes);
+    }
+
+    @Override
+    public SchemaInfo getSchemaInfo() {
+        return SCHEMA_INFO;
+    }
+
+    /**
+     * 无状态，可共享同一实例
+     */
+    @Override
+    public Schema<ThumbEvent> clone() {
+        return this;
+    }
+}
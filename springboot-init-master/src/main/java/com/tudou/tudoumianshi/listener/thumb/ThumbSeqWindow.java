@@ -0,0 +1,117 @@
+package com.tudou.tudoumianshi.listener.thumb;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单个用户已落库的事件序号窗口
+ * <p>
+ * 不大于 baseSeq 的事件均已落库；大于 baseSeq 的已落库序号逐个记录（连同题目 id），连续后并入 baseSeq。
+ * 与高水位不同，N+1 先落库后重新投递的 N 仍会被处理。
+ */
+public class ThumbSeqWindow {
+
+    public enum Result {
+        /**
+         * 需要落库
+         */
+        APPLY,
+        /**
+         * 已落库过
+         */
+        DUPLICATE,
+        /**
+         * 同一题目更大序号的事件已落库，本事件状态已过期，只记录不落库
+         */
+        SUPERSEDED
+    }
+
+    private long baseSeq;
+
+    /**
+     * 大于 baseSeq 的已落库序号 -> 题目 id
+     */
+    private final TreeMap<Long, Long> applied = new TreeMap<>();
+
+    private boolean changed;
+
+    public ThumbSeqWindow(long baseSeq) {
+        this.baseSeq = baseSeq;
+    }
+
+    /**
+     * 判断事件是否需要落库，并将其记为已处理
+     *
+     * @param size 窗口跨度，序号超出 baseSeq + size 时窗口前移，被越过的缺失序号视为丢失，由对账任务修复
+     */
+    public Result offer(long seq, long questionId, int size) {
+        if (seq <= baseSeq || applied.containsKey(seq)) {
+            return Result.DUPLICATE;
+        }
+        changed = true;
+        if (seq - baseSeq > size) {
+            baseSeq = seq - size;
+            applied.headMap(baseSeq, true).clear();
+        }
+        Result result = Result.APPLY;
+        for (Map.Entry<Long, Long> entry : applied.tailMap(seq, false).entrySet()) {
+            if (entry.getValue() == questionId) {
+                result = Result.SUPERSEDED;
+                break;
+            }
+        }
+        applied.put(seq, questionId);
+        while (!applied.isEmpty() && applied.firstKey() == baseSeq + 1) {
+            applied.pollFirstEntry();
+            baseSeq++;
+        }
+        return result;
+    }
+
+    public long getBaseSeq() {
+        return baseSeq;
+    }
+
+    /**
+     * 已落库的最大序号
+     */
+    public long getMaxSeq() {
+        return applied.isEmpty() ? baseSeq : applied.lastKey();
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * 编码为 偏移:题目id，逗号分隔，偏移相对 baseSeq
+     */
+    public String encodeApplied() {
+        if (applied.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(applied.size() * 16);
+        for (Map.Entry<Long, Long> entry : applied.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey() - baseSeq).append(':').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    public static ThumbSeqWindow decode(Long baseSeq, String applied) {
+        ThumbSeqWindow window = new ThumbSeqWindow(baseSeq == null ? 0L : baseSeq);
+        if (StrUtil.isBlank(applied)) {
+            return window;
+        }
+        for (String item : applied.split(",")) {
+            int colon = item.indexOf(':');
+            long seq = window.baseSeq + Long.parseLong(item.substring(0, colon));
+            window.applied.put(seq, Long.parseLong(item.substring(colon + 1)));
+        }
+        return window;
+    }
+}
@@ -0,0 +1,429 @@
+package com.tudou.tudoumianshi.manager;
+
+import cn.hutool.core.io.resource.ResourceUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.mapper.QuestionBankQuestionMapper;
+import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
+import com.tudou.tudoumianshi.model.entity.Question;
+import com.tudou.tudoumianshi.model.entity.QuestionBankQuestion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActiveShardCount;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.ResizeRequest;
+import org.elasticsearch.client.indices.ResizeResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.xcontent.XContentType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 题目全量重建索引：写入新索引后原子切换别名
+ * <p>
+ * 1. 按 id 键集分页读取，每页一次 IN 查询题库关系，堆上只保留一页数据
+ * 2. BulkProcessor 按字节攒批并发发送，在途请求达到上限时 add 阻塞读取线程，在途字节不超过 (并发数 + 1) * 批大小
+ * 3. 加载期间关闭 refresh、副本数置 0，完成后恢复并 refresh，再切换别名，查询不会看到建了一半的索引
+ */
+@Component
+@Slf4j
+public class QuestionEsBulkIndexer {
+
+    /**
+     * 查询使用的别名
+     */
+    public static final String QUESTION_ALIAS = "question";
+
+    /**
+     * 旧版本直接使用的同名索引在切换前克隆到这里保留，需要回滚时手动指回别名
+     */
+    public static final String LEGACY_BACKUP_INDEX = QUESTION_ALIAS + "_legacy";
+
+    private static final String INDEX_DEFINITION = "es/question_index.json";
+
+    @Resource
+    private RestHighLevelClient restHighLevelClient;
+
+    @Resource
+    private ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private QuestionBankQuestionMapper questionBankQuestionMapper;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${es.reindex.page-size:1000}")
+    private int pageSize;
+
+    /**
+     * 单个 bulk 请求的大小（MB）与并发的 bulk 请求数
+     */
+    @Value("${es.reindex.bulk-size-mb:5}")
+    private int bulkSizeMb;
+
+    @Value("${es.reindex.concurrent-requests:4}")
+    private int concurrentRequests;
+
+    /**
+     * 加载完成后恢复的设置
+     */
+    @Value("${es.reindex.replicas:1}")
+    private int replicas;
+
+    @Value("${es.reindex.refresh-interval:1s}")
+    private String refreshInterval;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+
+    private Counter docsCounter;
+    private Counter failedCounter;
+    private Counter bytesCounter;
+    private Timer bulkTimer;
+
+    @PostConstruct
+    public void init() {
+        docsCounter = meterRegistry.counter("es.reindex.docs");
+        failedCounter = meterRegistry.counter("es.reindex.failed");
+        bytesCounter = meterRegistry.counter("es.reindex.bytes");
+        bulkTimer = meterRegistry.timer("es.reindex.bulk");
+        Gauge.builder("es.reindex.progress", this, i -> i.total.get() > 0 ? (double) i.indexed.get() / i.total.get() : 0)
+                .description("当前重建索引已写入的比例")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按索引定义创建索引，关闭 refresh、不分配副本
+     */
+    public void createIndex(String index) throws IOException {
+        JSONObject definition = JSONUtil.parseObj(ResourceUtil.readStr(INDEX_DEFINITION, StandardCharsets.UTF_8));
+        JSONObject settings = definition.getJSONObject("settings");
+        if (settings == null) {
+            settings = new JSONObject();
+            definition.set("settings", settings);
+        }
+        settings.set("refresh_interval", "-1");
+        settings.set("number_of_replicas", 0);
+        restHighLevelClient.indices().create(new CreateIndexRequest(index)
+                .source(definition.toString(), XContentType.JSON), RequestOptions.DEFAULT);
+        log.info("创建题目索引: {}", index);
+    }
+
+    /**
+     * 流式写入全部未删除的题目
+     *
+     * @return 写入的文档数
+     */
+    public long backfill(String index) throws InterruptedException {
+        total.set(questionMapper.selectCount(null));
+        indexed.set(0);
+        AtomicLong failed = new AtomicLong();
+        AtomicReference<String> firstFailure = new AtomicReference<>();
+        Map<Long, Long> bulkStarts = new ConcurrentHashMap<>();
+        BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                bulkStarts.put(executionId, System.nanoTime());
+                bytesCounter.increment(request.estimatedSizeInBytes());
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                recordLatency(bulkStarts.remove(executionId));
+                int failures = 0;
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        failures++;
+                        firstFailure.compareAndSet(null, item.getFailureMessage());
+                    }
+                }
+                onBulkDone(request.numberOfActions() - failures, failures, failed);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                recordLatency(bulkStarts.remove(executionId));
+                firstFailure.compareAndSet(null, failure.getMessage());
+                onBulkDone(0, request.numberOfActions(), failed);
+            }
+        };
+        // 429 时指数退避重试
+        BulkProcessor bulkProcessor = BulkProcessor.builder(
+                        (request, bulkListener) -> restHighLevelClient.bulkAsync(request, RequestOptions.DEFAULT, bulkListener),
+                        listener, "question-reindex")
+                .setBulkActions(-1)
+                .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+                .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), 5))
+                .build();
+
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        long read = 0;
+        try {
+            while (true) {
+                List<Question> page = questionMapper.selectList(new LambdaQueryWrapper<Question>()
+                        .gt(Question::getId, lastId)
+                        .orderByAsc(Question::getId)
+                        .last("limit " + pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (QuestionEsDTO questionEsDTO : toDocuments(page)) {
+                    bulkProcessor.add(toIndexRequest(index, questionEsDTO));
+                }
+                lastId = page.get(page.size() - 1).getId();
+                read += page.size();
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                log.info("重建题目索引: index={}, read={}/{}, indexed={}, {} docs/s",
+                        index, read, total.get(), indexed.get(), read * 1000 / elapsed);
+            }
+        } finally {
+            if (!bulkProcessor.awaitClose(10, TimeUnit.MINUTES)) {
+                // 仍有在途请求，写入数不完整，不能切换别名
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "重建题目索引超时，仍有 bulk 请求未完成");
+            }
+        }
+        if (failed.get() > 0) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR,
+                    "重建题目索引失败 " + failed.get() + " 条，首个错误: " + firstFailure.get());
+        }
+        log.info("题目索引写入完成: index={}, docs={}, cost={}ms", index, indexed.get(), System.currentTimeMillis() - start);
+        return indexed.get();
+    }
+
+    /**
+     * 同步写入多个索引，供增量同步使用；任一条失败抛出异常，由调用方重试
+     *
+     * @param indices    目标索引或别名
+     * @param documents  需要写入的文档
+     * @param deletedIds 需要删除的文档 id
+     */
+    public void writeDocuments(Collection<String> indices, List<QuestionEsDTO> documents, Collection<Long> deletedIds)
+            throws IOException {
+        BulkRequest request = new BulkRequest();
+        for (String index : indices) {
+            for (QuestionEsDTO questionEsDTO : documents) {
+                request.add(toIndexRequest(index, questionEsDTO));
+            }
+            for (Long id : deletedIds) {
+                request.add(new DeleteRequest(index, String.valueOf(id)));
+            }
+        }
+        if (request.numberOfActions() == 0) {
+            return;
+        }
+        BulkResponse response = restHighLevelClient.bulk(request, RequestOptions.DEFAULT);
+        int failures = 0;
+        String firstFailure = null;
+        for (BulkItemResponse item : response.getItems()) {
+            // 删除不存在的文档不算失败
+            if (item.isFailed() && item.status() != RestStatus.NOT_FOUND) {
+                failures++;
+                if (firstFailure == null) {
+                    firstFailure = item.getFailureMessage();
+                }
+            }
+        }
+        if (failures > 0) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR,
+                    "写入题目索引失败 " + failures + " 条，首个错误: " + firstFailure);
+        }
+    }
+
+    /**
+     * 恢复 refresh 与副本设置并 refresh，之后才能切换别名
+     */
+    public void finishLoad(String index) throws IOException {
+        restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(index).settings(Settings.builder()
+                .put("index.refresh_interval", refreshInterval)
+                .put("index.number_of_replicas", replicas)), RequestOptions.DEFAULT);
+        restHighLevelClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 原子地将别名从旧索引切换到新索引
+     *
+     * @return 切换前别名指向的索引
+     */
+    public Set<String> switchAlias(String index) throws IOException {
+        Set<String> previous = getAliasIndices();
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        boolean legacy = previous.isEmpty() && restHighLevelClient.indices()
+                .exists(new GetIndexRequest(QUESTION_ALIAS), RequestOptions.DEFAULT);
+        if (legacy) {
+            // 旧版本直接使用了同名索引：先完整克隆一份，再在同一请求中删除原索引，别名不会出现空档
+            backupLegacyIndex();
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(QUESTION_ALIAS));
+        }
+        for (String old : previous) {
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(old).alias(QUESTION_ALIAS));
+        }
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(index).alias(QUESTION_ALIAS));
+        try {
+            restHighLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            if (legacy) {
+                unblockLegacy(e);
+            }
+            throw e;
+        }
+        log.info("题目索引别名切换: {} -> {}", legacy ? QUESTION_ALIAS + "(已备份到 " + LEGACY_BACKUP_INDEX + ")" : previous, index);
+        return previous;
+    }
+
+    /**
+     * 禁止写入后克隆旧版同名索引，克隆共享段文件，保留原有映射、设置和全部文档
+     * <p>
+     * 禁写期间的增量写入会失败并由增量同步重试，切换后写入新索引
+     */
+    private void backupLegacyIndex() throws IOException {
+        if (restHighLevelClient.indices().exists(new GetIndexRequest(LEGACY_BACKUP_INDEX), RequestOptions.DEFAULT)) {
+            // 上次切换失败留下的备份，之后原索引恢复过写入，以原索引为准重新克隆
+            deleteIndex(LEGACY_BACKUP_INDEX);
+        }
+        setWriteBlock(QUESTION_ALIAS, true);
+        try {
+            ResizeResponse response = restHighLevelClient.indices().clone(
+                    new ResizeRequest(LEGACY_BACKUP_INDEX, QUESTION_ALIAS).setWaitForActiveShards(ActiveShardCount.ALL),
+                    RequestOptions.DEFAULT);
+            if (!response.isAcknowledged() || !response.isShardsAcknowledged()) {
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "备份旧题目索引未完成: " + LEGACY_BACKUP_INDEX);
+            }
+        } catch (IOException | RuntimeException e) {
+            unblockLegacy(e);
+            throw e;
+        }
+        log.info("旧题目索引已备份: {} -> {}", QUESTION_ALIAS, LEGACY_BACKUP_INDEX);
+    }
+
+    /**
+     * 切换失败时恢复旧索引的写入，不掩盖原始异常
+     */
+    private void unblockLegacy(Exception cause) {
+        try {
+            setWriteBlock(QUESTION_ALIAS, false);
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void setWriteBlock(String index, boolean blocked) throws IOException {
+        restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(index)
+                .settings(Settings.builder().put("index.blocks.write", blocked)), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 别名当前指向的索引，别名不存在时为空
+     */
+    public Set<String> getAliasIndices() throws IOException {
+        return restHighLevelClient.indices()
+                .getAlias(new GetAliasesRequest(QUESTION_ALIAS), RequestOptions.DEFAULT)
+                .getAliases().keySet();
+    }
+
+    /**
+     * 匹配通配符的索引，没有时为空
+     */
+    public Set<String> listIndices(String pattern) throws IOException {
+        GetIndexRequest request = new GetIndexRequest(pattern).indicesOptions(IndicesOptions.lenientExpandOpen());
+        return new HashSet<>(Arrays.asList(restHighLevelClient.indices().get(request, RequestOptions.DEFAULT).getIndices()));
+    }
+
+    public void deleteIndex(String index) throws IOException {
+        restHighLevelClient.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+        log.info("删除题目索引: {}", index);
+    }
+
+    /**
+     * 转为 ES 文档，每批一次 IN 查询补全所属题库
+     */
+    public List<QuestionEsDTO> toDocuments(List<Question> questions) {
+        List<Long> questionIds = new ArrayList<>(questions.size());
+        for (Question question : questions) {
+            questionIds.add(question.getId());
+        }
+        Map<Long, List<Long>> bankIds = new HashMap<>(questions.size() * 2);
+        for (QuestionBankQuestion relation : questionBankQuestionMapper.selectList(new LambdaQueryWrapper<QuestionBankQuestion>()
+                .select(QuestionBankQuestion::getQuestionId, QuestionBankQuestion::getQuestionBankId)
+                .in(QuestionBankQuestion::getQuestionId, questionIds))) {
+            bankIds.computeIfAbsent(relation.getQuestionId(), k -> new ArrayList<>()).add(relation.getQuestionBankId());
+        }
+        List<QuestionEsDTO> documents = new ArrayList<>(questions.size());
+        for (Question question : questions) {
+            QuestionEsDTO questionEsDTO = QuestionEsDTO.objToDto(question);
+            questionEsDTO.setQuestionBankId(bankIds.getOrDefault(question.getId(), new ArrayList<>()));
+            documents.add(questionEsDTO);
+        }
+        return documents;
+    }
+
+    private IndexRequest toIndexRequest(String index, QuestionEsDTO questionEsDTO) {
+        String source = elasticsearchRestTemplate.getElasticsearchConverter().mapObject(questionEsDTO).toJson();
+        return new IndexRequest(index).id(String.valueOf(questionEsDTO.getId())).source(source, XContentType.JSON);
+    }
+
+    private void onBulkDone(int succeeded, int failures, AtomicLong failed) {
+        indexed.addAndGet(succeeded);
+        docsCounter.increment(succeeded);
+        if (failures > 0) {
+            failed.addAndGet(failures);
+            failedCounter.increment(failures);
+        }
+    }
+
+    private void recordLatency(Long startNanos) {
+        if (startNanos != null) {
+            bulkTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.tudou.tudoumianshi.manager;
+
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
+import com.tudou.tudoumianshi.model.entity.Question;
+import com.tudou.tudoumianshi.model.vo.QuestionIndexStatusVO;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * 题目索引蓝绿切换：新建 question_vN，回填完成后原子切换 question 别名
+ * <p>
+ * 1. 回填前在 Redis 登记新索引，增量同步通过 getWriteIndices 同时写别名和新索引
+ * 2. 回填后按 updateTime 补写回填期间变更的题目，覆盖回填读到旧数据后才写入的情况
+ * 3. 恢复设置并 refresh 后再切换别名，查询只会看到旧索引或完整的新索引
+ * 4. 回填失败时删除新索引，别名不动；切换请求失败时先确认别名，别名已指向新索引则视为切换成功，绝不删除别名指向的索引
+ * 5. 保留最近的旧版本用于回滚，更早的 question_vN 和全量同步留下的 question_yyyyMMddHHmmss 一并清理，question_legacy 不清理
+ */
+@Component
+@Slf4j
+public class QuestionEsIndexLifecycleManager {
+
+    public static final String VERSION_PREFIX = QuestionEsBulkIndexer.QUESTION_ALIAS + "_v";
+
+    /**
+     * 正在回填的索引，增量同步需要双写
+     */
+    private static final String BUILDING_KEY = "es:question:building";
+
+    private static final String ROLLOVER_LOCK_KEY = "es:question:rollover_lock";
+
+    private static final int CATCH_UP_BATCH_SIZE = 500;
+
+    /**
+     * 旧版全量同步创建的索引：question_yyyyMMddHHmmss，均早于 question_vN
+     */
+    private static final Pattern TIMESTAMP_INDEX = Pattern.compile(QuestionEsBulkIndexer.QUESTION_ALIAS + "_\\d{14}");
+
+    @Resource
+    private QuestionEsBulkIndexer questionEsBulkIndexer;
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 切换后保留的旧版本数
+     */
+    @Value("${es.lifecycle.retain:1}")
+    private int retain;
+
+    /**
+     * 补写时向前多取的秒数，覆盖节点间时钟偏差与未提交的事务
+     */
+    @Value("${es.lifecycle.catch-up-margin-seconds:60}")
+    private int catchUpMarginSeconds;
+
+    private ExecutorService roller;
+
+    private final AtomicBoolean rolling = new AtomicBoolean();
+
+    private volatile String lastRolloverError;
+
+    @PostConstruct
+    public void init() {
+        roller = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("question-index-rollover-"));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        roller.shutdownNow();
+    }
+
+    /**
+     * 异步执行一次切换
+     *
+     * @return 是否已开始，已有节点在切换时返回 false
+     */
+    public boolean startRollover() {
+        if (redissonClient.getLock(ROLLOVER_LOCK_KEY).isLocked() || !rolling.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            roller.execute(() -> {
+                try {
+                    rollover();
+                    lastRolloverError = null;
+                } catch (Exception e) {
+                    lastRolloverError = e.getMessage();
+                    log.error("题目索引切换失败", e);
+                } finally {
+                    rolling.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rolling.set(false);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "题目索引切换任务提交失败");
+        }
+        return true;
+    }
+
+    /**
+     * 新建下一个版本的索引并切换别名
+     *
+     * @return 新索引名
+     */
+    public String rollover() throws IOException, InterruptedException {
+        RLock lock = redissonClient.getLock(ROLLOVER_LOCK_KEY);
+        if (!lock.tryLock()) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "已有节点在切换题目索引");
+        }
+        try {
+            Set<String> versions = questionEsBulkIndexer.listIndices(VERSION_PREFIX + "*");
+            Set<String> current = questionEsBulkIndexer.getAliasIndices();
+            dropAbandoned(versions, current);
+            String index = VERSION_PREFIX + (maxVersion(versions) + 1);
+            long start = System.currentTimeMillis();
+            Date since = new Date(start - catchUpMarginSeconds * 1000L);
+            questionEsBulkIndexer.createIndex(index);
+            // 先登记再回填，回填期间的变更一定会写入新索引
+            stringRedisTemplate.opsForValue().set(BUILDING_KEY, index);
+            long total;
+            long caughtUp;
+            try {
+                total = questionEsBulkIndexer.backfill(index);
+                caughtUp = catchUp(index, since);
+                questionEsBulkIndexer.finishLoad(index);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // 别名尚未切换：先停止双写再删除，避免增量写入自动创建出没有映射的同名索引
+                stringRedisTemplate.delete(BUILDING_KEY);
+                questionEsBulkIndexer.deleteIndex(index);
+                throw e;
+            }
+            switchAlias(index);
+            // 别名已指向新索引，停止双写
+            stringRedisTemplate.delete(BUILDING_KEY);
+            log.info("题目索引切换完成: {} -> {}, backfill={}, catchUp={}, cost={}ms",
+                    current, index, total, caughtUp, System.currentTimeMillis() - start);
+            purge(index);
+            return index;
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 切换别名；请求失败时别名可能已经生效（如响应超时），重新读取别名后再决定是否删除新索引
+     */
+    private void switchAlias(String index) throws IOException {
+        try {
+            questionEsBulkIndexer.switchAlias(index);
+        } catch (IOException | RuntimeException e) {
+            Set<String> aliased;
+            try {
+                aliased = questionEsBulkIndexer.getAliasIndices();
+            } catch (IOException | RuntimeException checkError) {
+                // 无法确认别名指向时保留新索引，下次切换时按别名判断是否清理；继续双写，避免新索引缺少变更
+                e.addSuppressed(checkError);
+                throw e;
+            }
+            if (aliased.contains(index)) {
+                log.warn("题目索引别名切换请求报错，但别名已指向新索引: {}", index, e);
+                return;
+            }
+            stringRedisTemplate.delete(BUILDING_KEY);
+            try {
+                questionEsBulkIndexer.deleteIndex(index);
+            } catch (IOException | RuntimeException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 增量同步需要写入的索引：别名，以及正在回填的新索引
+     */
+    public Set<String> getWriteIndices() {
+        Set<String> indices = new LinkedHashSet<>();
+        indices.add(QuestionEsBulkIndexer.QUESTION_ALIAS);
+        String building = stringRedisTemplate.opsForValue().get(BUILDING_KEY);
+        if (building != null) {
+            indices.add(building);
+        }
+        return indices;
+    }
+
+    public QuestionIndexStatusVO getStatus() throws IOException {
+        QuestionIndexStatusVO vo = new QuestionIndexStatusVO();
+        List<String> versions = new ArrayList<>(questionEsBulkIndexer.listIndices(VERSION_PREFIX + "*"));
+        versions.sort((a, b) -> Integer.compare(parseVersion(b), parseVersion(a)));
+        vo.setVersions(versions);
+        vo.setAliasIndices(new ArrayList<>(questionEsBulkIndexer.getAliasIndices()));
+        vo.setBuildingIndex(stringRedisTemplate.opsForValue().get(BUILDING_KEY));
+        vo.setRolling(rolling.get() || redissonClient.getLock(ROLLOVER_LOCK_KEY).isLocked());
+        vo.setLastRolloverError(lastRolloverError);
+        return vo;
+    }
+
+    /**
+     * 补写回填开始后变更的题目，包括逻辑删除的，与增量同步一致
+     */
+    private long catchUp(String index, Date since) throws IOException {
+        List<Question> questions = questionMapper.listQuestionWithDelete(since);
+        for (int i = 0; i < questions.size(); i += CATCH_UP_BATCH_SIZE) {
+            List<Question> batch = questions.subList(i, Math.min(i + CATCH_UP_BATCH_SIZE, questions.size()));
+            List<QuestionEsDTO> documents = questionEsBulkIndexer.toDocuments(batch);
+            questionEsBulkIndexer.writeDocuments(Collections.singleton(index), documents, Collections.emptyList());
+        }
+        return questions.size();
+    }
+
+    /**
+     * 上次切换中途退出留下的索引：未被别名引用且比当前版本新
+     */
+    private void dropAbandoned(Set<String> versions, Set<String> current) throws IOException {
+        int currentVersion = maxVersion(current);
+        stringRedisTemplate.delete(BUILDING_KEY);
+        for (String index : new ArrayList<>(versions)) {
+            if (!current.contains(index) && parseVersion(index) > currentVersion) {
+                questionEsBulkIndexer.deleteIndex(index);
+                versions.remove(index);
+            }
+        }
+    }
+
+    /**
+     * 删除超出保留数的旧版本，包括旧版全量同步留下的时间戳索引；别名指向的索引和 question_legacy 不删除
+     */
+    private void purge(String active) {
+        Set<String> indices;
+        Set<String> aliased;
+        try {
+            indices = questionEsBulkIndexer.listIndices(QuestionEsBulkIndexer.QUESTION_ALIAS + "_*");
+            aliased = questionEsBulkIndexer.getAliasIndices();
+        } catch (IOException e) {
+            log.warn("查询旧题目索引失败，下次切换时再清理", e);
+            return;
+        }
+        List<String> old = new ArrayList<>();
+        for (String index : indices) {
+            if (index.equals(active) || aliased.contains(index)
+                    || QuestionEsBulkIndexer.LEGACY_BACKUP_INDEX.equals(index)) {
+                continue;
+            }
+            if (parseVersion(index) >= 0 || TIMESTAMP_INDEX.matcher(index).matches()) {
+                old.add(index);
+            }
+        }
+        // 新的在前：question_vN 按版本号降序，其后是按时间降序的时间戳索引
+        old.sort(Comparator.comparingInt(QuestionEsIndexLifecycleManager::parseVersion)
+                .thenComparing(Comparator.naturalOrder())
+                .reversed());
+        for (String index : old.subList(Math.min(retain, old.size()), old.size())) {
+            try {
+                questionEsBulkIndexer.deleteIndex(index);
+            } catch (IOException e) {
+                // 不影响本次切换，下次切换时再删
+                log.warn("删除旧题目索引失败: {}", index, e);
+            }
+        }
+    }
+
+    private static int maxVersion(Set<String> indices) {
+        int max = 0;
+        for (String index : indices) {
+            max = Math.max(max, parseVersion(index));
+        }
+        return max;
+    }
+
+    /**
+     * question_v12 -> 12，非版本索引返回 -1
+     */
+    private static int parseVersion(String index) {
+        if (!index.startsWith(VERSION_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.substring(VERSION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package com.tudou.tudoumianshi.manager;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import com.tudou.tudoumianshi.mapper.ThumbCountTxMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 题目点赞数增量聚合
+ * <p>
+ * 1. 点赞数变化先在内存中按题目合并，按线程分段（同 LongAdder），热点题目的并发写入分散到不同分段
+ * 2. 按时间间隔或累计次数刷盘，合并后的增量在一个事务中分块执行 CASE 更新，失败时整体回滚、下次整体重试
+ * 3. 崩溃恢复：每次调用在所在事务中写入一条事务标记（thumb_count_tx），提交前把增量连同标记 id 追加到预写日志并 fsync；
+ * 刷盘与删除对应标记在同一事务中提交。重放时只计入标记仍存在的日志帧，未提交的事务和已刷盘的增量都不会计入，重放可重复执行
+ */
+@Component
+@Slf4j
+public class ThumbCountAggregator {
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    /**
+     * 日志帧：txId(8B) | 记录数(4B) | 记录数 * (questionId(8B) | delta(8B))
+     */
+    private static final int FRAME_HEADER_SIZE = 12;
+
+    private static final int RECORD_SIZE = 16;
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private ThumbCountTxMapper thumbCountTxMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 关闭时每次增量在调用方事务中直接更新数据库
+     */
+    @Value("${thumb.count.enabled:true}")
+    private boolean enabled;
+
+    @Value("${thumb.count.stripes:16}")
+    private int stripeCount;
+
+    /**
+     * 累计增量次数达到阈值时提前刷盘
+     */
+    @Value("${thumb.count.flush-threshold:10000}")
+    private int flushThreshold;
+
+    /**
+     * 预写日志目录，须在重启后保留（容器部署时挂载持久卷），相对路径基于工作目录
+     */
+    @Value("${thumb.count.wal-dir:data/thumb-count-wal}")
+    private String walDir;
+
+    @Value("${thumb.persist.chunk-size:500}")
+    private int chunkSize;
+
+    private Stripe[] stripes;
+
+    /**
+     * 写入方持读锁，刷盘切换分段和日志段时持写锁
+     */
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * 保证日志帧整体写入，不与其他线程交错
+     */
+    private final ReentrantLock walWriteLock = new ReentrantLock();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * 刷盘失败的增量与对应日志帧，下次刷盘时合并重试
+     */
+    private final Map<Long, Long> retryDeltas = new HashMap<>();
+
+    private final List<Frame> retryFrames = new ArrayList<>();
+
+    /**
+     * 已切走的日志段，其中的帧全部刷盘或回滚后删除
+     */
+    private final List<Segment> sealedSegments = new ArrayList<>();
+
+    private volatile FileChannel walChannel;
+
+    private volatile Segment currentSegment;
+
+    private Path walPath;
+
+    private long segmentSeq;
+
+    private ExecutorService flusher;
+
+    @PostConstruct
+    public void init() throws IOException {
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        flusher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("thumb-count-flush-"));
+        if (!enabled) {
+            return;
+        }
+        walPath = Paths.get(walDir).toAbsolutePath();
+        if (walPath.startsWith(Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            log.warn("点赞数预写日志位于临时目录，重启后可能丢失: {}", walPath);
+        }
+        Files.createDirectories(walPath);
+        recover();
+        openSegment();
+        log.info("点赞数聚合启动: stripes={}, flushThreshold={}, walDir={}", stripeCount, flushThreshold, walPath);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        if (enabled) {
+            flush();
+        }
+        closeQuietly(walChannel);
+    }
+
+    /**
+     * 记录点赞数变化，须在落库事务中调用，事务提交后才计入
+     *
+     * @param countMap 题目 id -> 点赞数变化
+     */
+    public void add(Map<Long, Long> countMap) {
+        if (countMap.isEmpty()) {
+            return;
+        }
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 与调用方的落库在同一事务中提交；不在事务中时单独开启事务
+            transactionTemplate.executeWithoutResult(status -> updateThumbCounts(countMap));
+            return;
+        }
+        long txId = IdWorker.getId();
+        thumbCountTxMapper.insertTx(txId);
+        Map<Long, Long> deltas = new HashMap<>(countMap);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            private Segment segment;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // 抛出异常时事务回滚
+                segment = appendFrame(txId, deltas);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (segment == null) {
+                    return;
+                }
+                if (status == STATUS_COMMITTED) {
+                    addCommitted(new Frame(txId, segment), deltas);
+                } else if (status == STATUS_ROLLED_BACK) {
+                    segment.outstanding.decrementAndGet();
+                }
+                // 状态未知时保留日志段，重启后按标记判断
+            }
+        });
+    }
+
+    public void add(Long questionId, long delta) {
+        add(Collections.singletonMap(questionId, delta));
+    }
+
+    /**
+     * 追加日志帧并 fsync，多个事务并发提交时共享落盘
+     */
+    private Segment appendFrame(long txId, Map<Long, Long> deltas) {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + deltas.size() * RECORD_SIZE);
+        buffer.putLong(txId).putInt(deltas.size());
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            buffer.putLong(entry.getKey()).putLong(entry.getValue());
+        }
+        buffer.flip();
+        swapLock.readLock().lock();
+        Segment segment = currentSegment;
+        segment.outstanding.incrementAndGet();
+        try {
+            walWriteLock.lock();
+            try {
+                writeFully(walChannel, buffer);
+            } finally {
+                walWriteLock.unlock();
+            }
+            walChannel.force(false);
+            return segment;
+        } catch (IOException e) {
+            segment.outstanding.decrementAndGet();
+            log.error("写入点赞数预写日志失败", e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "写入点赞数预写日志失败");
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void addCommitted(Frame frame, Map<Long, Long> deltas) {
+        Stripe stripe = stripes[(int) (Thread.currentThread().getId() % stripeCount)];
+        swapLock.readLock().lock();
+        try {
+            stripe.lock.lock();
+            try {
+                for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+                    stripe.deltas.merge(entry.getKey(), entry.getValue(), Long::sum);
+                }
+                stripe.frames.add(frame);
+            } finally {
+                stripe.lock.unlock();
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (pendingUpdates.addAndGet(deltas.size()) >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RuntimeException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 合并各分段的增量，与删除对应事务标记在同一事务中写入数据库
+     */
+    @Scheduled(fixedDelayString = "${thumb.count.flush-interval:1000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            Map<Long, Long> merged = new HashMap<>(retryDeltas);
+            List<Frame> frames = new ArrayList<>(retryFrames);
+            swapLock.writeLock().lock();
+            try {
+                pendingUpdates.set(0);
+                for (Stripe stripe : stripes) {
+                    // 写入方已被写锁挡住，无需再加分段锁
+                    stripe.deltas.forEach((questionId, delta) -> merged.merge(questionId, delta, Long::sum));
+                    frames.addAll(stripe.frames);
+                    stripe.deltas = new HashMap<>();
+                    stripe.frames = new ArrayList<>();
+                }
+                if (!walChannel.isOpen()) {
+                    // 上次切换失败，重新打开日志段
+                    openSegment();
+                } else if (walChannel.position() > 0) {
+                    closeQuietly(walChannel);
+                    sealedSegments.add(currentSegment);
+                    openSegment();
+                }
+            } catch (IOException e) {
+                log.error("切换点赞数预写日志失败", e);
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            if (!frames.isEmpty()) {
+                List<Long> txIds = new ArrayList<>(frames.size());
+                for (Frame frame : frames) {
+                    txIds.add(frame.txId);
+                }
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        updateThumbCounts(merged);
+                        deleteTxMarkers(txIds);
+                    });
+                } catch (Exception e) {
+                    // 事务整体回滚，下次整体重试，不会重复计入
+                    log.error("点赞数刷盘失败，下次重试: questions={}", merged.size(), e);
+                    retryDeltas.clear();
+                    retryDeltas.putAll(merged);
+                    retryFrames.clear();
+                    retryFrames.addAll(frames);
+                    return;
+                }
+                retryDeltas.clear();
+                retryFrames.clear();
+                for (Frame frame : frames) {
+                    frame.segment.outstanding.decrementAndGet();
+                }
+            }
+            Iterator<Segment> iterator = sealedSegments.iterator();
+            while (iterator.hasNext()) {
+                Segment segment = iterator.next();
+                if (segment.outstanding.get() == 0) {
+                    deleteQuietly(segment.path);
+                    iterator.remove();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 分块更新题目点赞数，按题目 id 排序保证加锁顺序一致，须在事务中调用
+     */
+    private void updateThumbCounts(Map<Long, Long> countMap) {
+        TreeMap<Long, Long> chunk = new TreeMap<>();
+        for (Map.Entry<Long, Long> entry : new TreeMap<>(countMap).entrySet()) {
+            if (entry.getValue() == 0) {
+                continue;
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() >= chunkSize) {
+                questionMapper.batchUpdateThumbCount(chunk);
+                chunk = new TreeMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            questionMapper.batchUpdateThumbCount(chunk);
+        }
+    }
+
+    private void deleteTxMarkers(List<Long> txIds) {
+        for (int from = 0; from < txIds.size(); from += chunkSize) {
+            thumbCountTxMapper.deleteTx(txIds.subList(from, Math.min(from + chunkSize, txIds.size())));
+        }
+    }
+
+    /**
+     * 重放遗留的日志段：只计入标记仍存在（已提交、未刷盘）的帧，与删除标记在同一事务中提交；末尾不完整的帧丢弃
+     */
+    private void recover() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(walPath, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, Long>> frames = new LinkedHashMap<>();
+        for (Path segment : segments) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+            try {
+                while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                    long txId = buffer.getLong();
+                    int count = buffer.getInt();
+                    Map<Long, Long> deltas = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        deltas.put(buffer.getLong(), buffer.getLong());
+                    }
+                    frames.put(txId, deltas);
+                }
+            } catch (BufferUnderflowException e) {
+                // 写入中途宕机，该帧未 fsync，所在事务未提交
+                log.warn("丢弃不完整的点赞数预写日志帧: {}", segment);
+            }
+            segmentSeq = Math.max(segmentSeq, parseSeq(segment));
+        }
+        List<Long> txIds = new ArrayList<>(frames.keySet());
+        Set<Long> committed = new HashSet<>();
+        for (int from = 0; from < txIds.size(); from += chunkSize) {
+            committed.addAll(thumbCountTxMapper.listExistingTx(txIds.subList(from, Math.min(from + chunkSize, txIds.size()))));
+        }
+        Map<Long, Long> merged = new HashMap<>();
+        for (Long txId : committed) {
+            frames.get(txId).forEach((questionId, delta) -> merged.merge(questionId, delta, Long::sum));
+        }
+        if (!committed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                updateThumbCounts(merged);
+                deleteTxMarkers(new ArrayList<>(committed));
+            });
+        }
+        for (Path segment : segments) {
+            deleteQuietly(segment);
+        }
+        log.info("重放点赞数预写日志: segments={}, frames={}, committed={}, questions={}",
+                segments.size(), frames.size(), committed.size(), merged.size());
+    }
+
+    private void openSegment() throws IOException {
+        segmentSeq++;
+        Segment segment = new Segment(walPath.resolve(String.format("%020d", segmentSeq) + SEGMENT_SUFFIX));
+        walChannel = FileChannel.open(segment.path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSegment = segment;
+    }
+
+    private static long parseSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭点赞数预写日志失败", e);
+        }
+    }
+
+    private static void deleteQuietly(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            log.warn("删除点赞数预写日志失败: {}", segment, e);
+        }
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Map<Long, Long> deltas = new HashMap<>();
+
+        private List<Frame> frames = new ArrayList<>();
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+
+        /**
+         * 已写入、尚未刷盘或回滚的帧数
+         */
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    private static final class Frame {
+
+        private final long txId;
+
+        private final Segment segment;
+
+        private Frame(long txId, Segment segment) {
+            this.txId = txId;
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.tudou.tudoumianshi.manager;
+
+import cn.hutool.json.JSONUtil;
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.listener.thumb.ThumbEvent;
+import com.tudou.tudoumianshi.listener.thumb.ThumbEventCodec;
+import com.tudou.tudoumianshi.manager.cache.ThumbStateStore;
+import com.tudou.tudoumianshi.model.vo.ThumbDeadLetterVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 点赞死信队列
+ * <p>
+ * 1. 消费 thumb-dlq-topic，无法解码或字段非法的为毒消息，只保留样本和计数；其余为暂时性失败，
+ * 以 userId:questionId 暂存到 Redis 列表后确认
+ * 2. 重放时按批读取待重放列表，以 Redis 中的当前点赞状态重新生成事件并批量发送到 thumb-topic，
+ * 读取状态与分配新序号在同一脚本内完成，重放多次或与新事件交错都不会写入过期状态
+ * 3. 重放限速，集群内同时只有一个节点重放
+ */
+@Component
+@Slf4j
+public class ThumbDeadLetterManager {
+
+    @Resource
+    private PulsarClient pulsarClient;
+
+    @Resource
+    private BatchReceivePolicy batchReceivePolicy;
+
+    @Resource
+    private ThumbEventPublisher thumbEventPublisher;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private ThumbStateStore thumbStateStore;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${thumb.dlq.enabled:true}")
+    private boolean enabled;
+
+    @Value("${thumb.dlq.topic:thumb-dlq-topic}")
+    private String topic;
+
+    @Value("${thumb.dlq.subscription:thumb-dlq-subscription}")
+    private String subscription;
+
+    /**
+     * 每秒最多重放的点赞关系数
+     */
+    @Value("${thumb.dlq.replay-rate:10000}")
+    private int replayRate;
+
+    @Value("${thumb.dlq.replay-batch-size:1000}")
+    private int replayBatchSize;
+
+    /**
+     * 保留的毒消息样本数
+     */
+    @Value("${thumb.dlq.sample-size:100}")
+    private int sampleSize;
+
+    private volatile boolean running = true;
+
+    private Consumer<byte[]> consumer;
+
+    private ExecutorService poller;
+
+    private ExecutorService replayer;
+
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    private final AtomicLong replayedTotal = new AtomicLong();
+
+    private volatile String lastReplayError;
+
+    private Counter poisonCounter;
+    private Counter transientCounter;
+    private Counter replayedCounter;
+
+    @PostConstruct
+    public void init() {
+        poisonCounter = meterRegistry.counter("thumb.dlq.received", "kind", "poison");
+        transientCounter = meterRegistry.counter("thumb.dlq.received", "kind", "transient");
+        replayedCounter = meterRegistry.counter("thumb.dlq.replayed");
+        replayer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("thumb-dlq-replay-"));
+        if (!enabled) {
+            return;
+        }
+        try {
+            consumer = pulsarClient.newConsumer()
+                    .topic(topic)
+                    .subscriptionName(subscription)
+                    .subscriptionType(SubscriptionType.Shared)
+                    .batchReceivePolicy(batchReceivePolicy)
+                    .subscribe();
+            poller = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("thumb-dlq-poller-"));
+            poller.execute(this::receiveMessages);
+            log.info("点赞死信消费者启动: topic={}", topic);
+        } catch (PulsarClientException e) {
+            log.error("初始化点赞死信消费者失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        if (poller != null) {
+            poller.shutdown();
+        }
+        replayer.shutdown();
+        try {
+            // 重放以批为单位推进，最多等待当前批次完成
+            replayer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumer != null) {
+            try {
+                consumer.close();
+            } catch (PulsarClientException e) {
+                log.error("关闭点赞死信消费者失败", e);
+            }
+        }
+    }
+
+    /**
+     * 异步重放
+     *
+     * @param limit 最多重放的点赞关系数
+     * @return 是否已开始重放，已有节点在重放时返回 false
+     */
+    public boolean startReplay(long limit) {
+        if (limit <= 0) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "重放数量必须大于 0");
+        }
+        if (redissonClient.getLock(ThumbConstant.DLQ_REPLAY_LOCK_KEY).isLocked()
+                || !replaying.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            replayer.execute(() -> replay(limit));
+        } catch (RuntimeException e) {
+            replaying.set(false);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "死信重放任务提交失败");
+        }
+        return true;
+    }
+
+    public ThumbDeadLetterVO getStats() {
+        ThumbDeadLetterVO vo = new ThumbDeadLetterVO();
+        Long depth = stringRedisTemplate.opsForList().size(ThumbConstant.DLQ_PENDING_KEY);
+        vo.setPendingDepth(depth != null ? depth : 0L);
+        String poisonTotal = stringRedisTemplate.opsForValue().get(ThumbConstant.DLQ_POISON_TOTAL_KEY);
+        vo.setPoisonTotal(poisonTotal != null ? Long.parseLong(poisonTotal) : 0L);
+        vo.setReplaying(replaying.get() || redissonClient.getLock(ThumbConstant.DLQ_REPLAY_LOCK_KEY).isLocked());
+        vo.setReplayedTotal(replayedTotal.get());
+        vo.setLastReplayError(lastReplayError);
+        vo.setPendingSamples(stringRedisTemplate.opsForList().range(ThumbConstant.DLQ_PENDING_KEY, 0, sampleSize - 1));
+        List<String> samples = stringRedisTemplate.opsForList().range(ThumbConstant.DLQ_POISON_SAMPLES_KEY, 0, -1);
+        List<ThumbDeadLetterVO.Sample> poisonSamples = new ArrayList<>();
+        if (samples != null) {
+            for (String sample : samples) {
+                poisonSamples.add(JSONUtil.toBean(sample, ThumbDeadLetterVO.Sample.class));
+            }
+        }
+        vo.setPoisonSamples(poisonSamples);
+        return vo;
+    }
+
+    private void receiveMessages() {
+        long idleBackoff = 0;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            Messages<byte[]> messages;
+            try {
+                messages = consumer.batchReceive();
+            } catch (PulsarClientException.AlreadyClosedException e) {
+                break;
+            } catch (PulsarClientException e) {
+                log.error("接收死信消息失败", e);
+                sleep(1000);
+                continue;
+            }
+            if (messages == null || messages.size() == 0) {
+                idleBackoff = idleBackoff == 0 ? 100 : Math.min(idleBackoff * 2, 5000);
+                sleep(idleBackoff);
+                continue;
+            }
+            idleBackoff = 0;
+            try {
+                store(messages);
+                consumer.acknowledge(messages);
+            } catch (Exception e) {
+                log.error("处理死信消息失败: size={}", messages.size(), e);
+                consumer.negativeAcknowledge(messages);
+            }
+        }
+    }
+
+    private void store(Messages<byte[]> messages) {
+        List<String> pending = new ArrayList<>();
+        List<String> poison = new ArrayList<>();
+        for (Message<byte[]> message : messages) {
+            ThumbEvent event = null;
+            String reason;
+            try {
+                event = ThumbEventCodec.decode(message.getData());
+                reason = validate(event);
+            } catch (RuntimeException e) {
+                reason = "解码失败: " + e.getMessage();
+            }
+            if (reason == null) {
+                pending.add(event.getUserId() + ":" + event.getQuestionId());
+                continue;
+            }
+            ThumbDeadLetterVO.Sample sample = new ThumbDeadLetterVO.Sample();
+            sample.setMessageId(message.getMessageId().toString());
+            sample.setOriginMessageId(message.getProperty("ORIGIN_MESSAGE_ID"));
+            sample.setReason(reason);
+            sample.setPayload(Base64.getEncoder().encodeToString(message.getData()));
+            sample.setTime(System.currentTimeMillis());
+            poison.add(JSONUtil.toJsonStr(sample));
+            log.warn("点赞毒消息: messageId={}, reason={}", sample.getMessageId(), reason);
+        }
+        if (!pending.isEmpty()) {
+            stringRedisTemplate.opsForList().rightPushAll(ThumbConstant.DLQ_PENDING_KEY, pending);
+            transientCounter.increment(pending.size());
+        }
+        if (!poison.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.rPush(ThumbConstant.DLQ_POISON_SAMPLES_KEY, poison.toArray(new String[0]));
+                conn.lTrim(ThumbConstant.DLQ_POISON_SAMPLES_KEY, -sampleSize, -1);
+                conn.incrBy(ThumbConstant.DLQ_POISON_TOTAL_KEY, poison.size());
+                return null;
+            });
+            poisonCounter.increment(poison.size());
+        }
+    }
+
+    /**
+     * @return 毒消息原因，合法时返回 null
+     */
+    private static String validate(ThumbEvent event) {
+        if (event.getType() == null) {
+            return "事件类型为空";
+        }
+        if (event.getUserId() == null || event.getUserId() <= 0) {
+            return "userId 非法: " + event.getUserId();
+        }
+        if (event.getQuestionId() == null || event.getQuestionId() <= 0) {
+            return "questionId 非法: " + event.getQuestionId();
+        }
+        return null;
+    }
+
+    private void replay(long limit) {
+        RLock lock = redissonClient.getLock(ThumbConstant.DLQ_REPLAY_LOCK_KEY);
+        boolean acquired = false;
+        try {
+            // 不指定租期，由看门狗续期直到重放结束
+            acquired = lock.tryLock();
+            if (!acquired) {
+                log.info("其他节点正在重放点赞死信");
+                return;
+            }
+            lastReplayError = null;
+            long replayed = 0;
+            long nextPermit = System.nanoTime();
+            while (running && replayed < limit) {
+                int size = (int) Math.min(replayBatchSize, limit - replayed);
+                List<String> batch = stringRedisTemplate.opsForList().range(ThumbConstant.DLQ_PENDING_KEY, 0, size - 1);
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                nextPermit = acquirePermits(nextPermit, batch.size());
+                publishAll(resolveCurrentStates(batch));
+                // 新死信只会追加到列表尾部，发送成功后从头部裁掉本批
+                stringRedisTemplate.opsForList().trim(ThumbConstant.DLQ_PENDING_KEY, batch.size(), -1);
+                replayed += batch.size();
+                replayedTotal.addAndGet(batch.size());
+                replayedCounter.increment(batch.size());
+            }
+            log.info("点赞死信重放完成: replayed={}", replayed);
+        } catch (Exception e) {
+            // 未裁剪的批次保留在列表中，下次重放时重新发送
+            lastReplayError = e.getMessage();
+            log.error("点赞死信重放失败", e);
+        } finally {
+            if (acquired && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * 按当前 Redis 点赞状态生成事件，一次脚本调用读取整批状态并分配新序号；
+     * 发送前用户再操作时新事件序号更大，重放事件到达更晚也不会覆盖
+     */
+    private List<ThumbEvent> resolveCurrentStates(List<String> batch) {
+        List<Pair<Long, Long>> pairs = new ArrayList<>(batch.size());
+        for (String item : batch) {
+            int index = item.indexOf(':');
+            try {
+                pairs.add(Pair.of(Long.parseLong(item.substring(0, index)), Long.parseLong(item.substring(index + 1))));
+            } catch (RuntimeException e) {
+                log.warn("忽略非法的待重放记录: {}", item);
+            }
+        }
+        if (pairs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Pair<Boolean, Long>> states = thumbStateStore.snapshotWithSeq(pairs, null);
+        long now = System.currentTimeMillis();
+        List<ThumbEvent> events = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            ThumbEvent.EventType type = states.get(i).getLeft() ? ThumbEvent.EventType.INCR : ThumbEvent.EventType.DECR;
+            events.add(new ThumbEvent(pairs.get(i).getLeft(), pairs.get(i).getRight(), type, now, states.get(i).getRight()));
+        }
+        return events;
+    }
+
+    private void publishAll(List<ThumbEvent> events) {
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>(events.size());
+        for (ThumbEvent event : events) {
+            try {
+                futures.add(thumbEventPublisher.publish(event));
+            } catch (BusinessException e) {
+                // 在途消息已满，等已发送的批次完成后重试一次
+                thumbEventPublisher.flush();
+                futures.add(thumbEventPublisher.publish(event));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * 按固定速率发放许可，不足时等待
+     *
+     * @return 下一次可发放许可的时间
+     */
+    private long acquirePermits(long nextPermit, int permits) {
+        long now = System.nanoTime();
+        if (nextPermit > now) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(nextPermit - now));
+        }
+        return Math.max(nextPermit, now) + permits * TimeUnit.SECONDS.toNanos(1) / Math.max(replayRate, 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
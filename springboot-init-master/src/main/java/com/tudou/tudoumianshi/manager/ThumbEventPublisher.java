@@ -0,0 +1,208 @@
+package com.tudou.tudoumianshi.manager;
+
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.listener.thumb.ThumbEvent;
+import com.tudou.tudoumianshi.listener.thumb.ThumbEventSchema;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * thumb-topic 共享生产者
+ * <p>
+ * 1. 按 key 批量发送并压缩，key 为 userId，配合 Key_Shared 订阅保证同一用户的事件有序
+ * 2. 不阻塞调用线程：在途消息达到上限时直接抛出 BusinessException，由调用方回滚
+ */
+@Component
+@Slf4j
+public class ThumbEventPublisher {
+
+    @Resource
+    private PulsarClient pulsarClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${pulsar.thumb-producer.topic:thumb-topic}")
+    private String topic;
+
+    @Value("${pulsar.thumb-producer.batching-max-messages:1000}")
+    private int batchingMaxMessages;
+
+    @Value("${pulsar.thumb-producer.batching-max-bytes:131072}")
+    private int batchingMaxBytes;
+
+    /**
+     * 批量发送的最大等待时间（毫秒）
+     */
+    @Value("${pulsar.thumb-producer.batching-max-publish-delay:5}")
+    private long batchingMaxPublishDelay;
+
+    /**
+     * NONE / LZ4 / ZLIB / ZSTD / SNAPPY
+     */
+    @Value("${pulsar.thumb-producer.compression-type:LZ4}")
+    private CompressionType compressionType;
+
+    @Value("${pulsar.thumb-producer.max-pending-messages:10000}")
+    private int maxPendingMessages;
+
+    /**
+     * 发送超时（毫秒）
+     */
+    @Value("${pulsar.thumb-producer.send-timeout:30000}")
+    private int sendTimeout;
+
+    private volatile Producer<ThumbEvent> producer;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Timer publishTimer;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        publishTimer = Timer.builder("thumb.publish.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        rejectedCounter = meterRegistry.counter("thumb.publish.rejected");
+        failedCounter = meterRegistry.counter("thumb.publish.failed");
+        Gauge.builder("thumb.publish.in.flight", inFlight, AtomicInteger::get)
+                .register(meterRegistry);
+        try {
+            producer = pulsarClient.newProducer(ThumbEventSchema.INSTANCE)
+                    .topic(topic)
+                    .enableBatching(true)
+                    // 按 key 分批，Key_Shared 消费者才能按 key 拆分批次
+                    .batcherBuilder(BatcherBuilder.KEY_BASED)
+                    .batchingMaxMessages(batchingMaxMessages)
+                    .batchingMaxBytes(batchingMaxBytes)
+                    .batchingMaxPublishDelay(batchingMaxPublishDelay, TimeUnit.MILLISECONDS)
+                    .compressionType(compressionType)
+                    .maxPendingMessages(maxPendingMessages)
+                    .blockIfQueueFull(false)
+                    .sendTimeout(sendTimeout, TimeUnit.MILLISECONDS)
+                    .create();
+            log.info("点赞事件生产者初始化成功: topic={}, compression={}, batchingMaxMessages={}, batchingMaxPublishDelay={}ms",
+                    topic, compressionType, batchingMaxMessages, batchingMaxPublishDelay);
+        } catch (PulsarClientException e) {
+            log.error("点赞事件生产者初始化失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Producer<ThumbEvent> current = producer;
+        producer = null;
+        if (current == null) {
+            return;
+        }
+        try {
+            // 发出批次中剩余的消息再关闭
+            current.flush();
+            current.close();
+            log.info("点赞事件生产者已关闭");
+        } catch (PulsarClientException e) {
+            log.error("关闭点赞事件生产者失败", e);
+        }
+    }
+
+    /**
+     * 异步发送点赞事件
+     *
+     * @return 发送结果，失败时异常完成
+     * @throws BusinessException 生产者不可用或在途消息已满，此时事件未发送
+     */
+    public CompletableFuture<MessageId> publish(ThumbEvent event) {
+        Producer<ThumbEvent> current = producer;
+        if (current == null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "点赞服务暂不可用");
+        }
+        if (inFlight.incrementAndGet() > maxPendingMessages) {
+            inFlight.decrementAndGet();
+            rejectedCounter.increment();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "点赞人数过多，请稍后重试");
+        }
+        long start = System.nanoTime();
+        CompletableFuture<MessageId> future;
+        try {
+            future = current.newMessage()
+                    .key(String.valueOf(event.getUserId()))
+                    .value(event)
+                    .eventTime(event.getEventTime() != null ? event.getEventTime() : System.currentTimeMillis())
+                    .sendAsync();
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            failedCounter.increment();
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "点赞事件发送失败");
+        }
+        // 队列满时 Pulsar 立即以 ProducerQueueIsFullError 完成 future，同样同步反馈给调用方
+        if (future.isCompletedExceptionally()) {
+            inFlight.decrementAndGet();
+            Throwable cause = unwrap(future);
+            if (cause instanceof PulsarClientException.ProducerQueueIsFullError) {
+                rejectedCounter.increment();
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "点赞人数过多，请稍后重试");
+            }
+            failedCounter.increment();
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "点赞事件发送失败");
+        }
+        return future.whenComplete((messageId, throwable) -> {
+            inFlight.decrementAndGet();
+            publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (throwable != null) {
+                failedCounter.increment();
+            }
+        });
+    }
+
+    /**
+     * 立即发出当前批次并等待在途消息完成，供批量补偿任务在被拒绝后让出队列
+     */
+    public void flush() {
+        Producer<ThumbEvent> current = producer;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.flush();
+        } catch (PulsarClientException e) {
+            log.warn("点赞事件生产者 flush 失败", e);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private static Throwable unwrap(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.tudou.tudoumianshi.manager;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.mapper.ThumbMapper;
+import com.tudou.tudoumianshi.model.entity.Thumb;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 点赞关系批量落库
+ * <p>
+ * 按 (userId, questionId) 的最终状态落库，每个分块固定执行：
+ * 1 次元组 IN 查询已存在记录、1 次 INSERT IGNORE、1 次 FOR UPDATE 锁定待删除的行并删除，点赞数变化交给 ThumbCountAggregator 合并刷盘。
+ * 点赞数按实际新增 / 删除的行计算：INSERT IGNORE 影响行数不足时按本次生成的主键查出实际插入的行，删除只计入锁定的行，
+ * 重复投递或并发落库都不会重复计数。
+ * <p>
+ * 需在调用方事务中执行
+ */
+@Component
+@Slf4j
+public class ThumbPersistManager {
+
+    @Resource
+    private ThumbMapper thumbMapper;
+
+    @Resource
+    private ThumbCountAggregator thumbCountAggregator;
+
+    @Resource
+    private DataSource dataSource;
+
+    /**
+     * 单条 SQL 中的最大元组数，避免语句过长和超出 max_allowed_packet
+     */
+    @Value("${thumb.persist.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * 启动时检查 JDBC 是否开启批量改写，未开启时 saveBatch 等批量写入会退化为逐条发送
+     */
+    @PostConstruct
+    public void checkRewriteBatchedStatements() {
+        try (Connection connection = dataSource.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            if (url == null || !url.contains("rewriteBatchedStatements=true")) {
+                log.warn("数据库连接未开启 rewriteBatchedStatements=true，批量写入性能会下降: url={}", url);
+            }
+        } catch (Exception e) {
+            log.warn("检查 rewriteBatchedStatements 失败", e);
+        }
+    }
+
+    /**
+     * 按最终状态落库
+     *
+     * @param finalStates (userId, questionId) -> 最终是否点赞
+     * @return 题目 id -> 点赞数变化
+     */
+    public Map<Long, Long> apply(Map<Pair<Long, Long>, Boolean> finalStates) {
+        Map<Long, Long> countMap = new HashMap<>();
+        // 按 (userId, questionId) 排序后分块，并发事务 INSERT IGNORE 与 FOR UPDATE 锁定点赞行的顺序一致，避免死锁
+        List<Map.Entry<Pair<Long, Long>, Boolean>> entries = new ArrayList<>(finalStates.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            applyChunk(entries.subList(from, Math.min(from + chunkSize, entries.size())), countMap);
+        }
+        // 点赞数交给聚合器合并后统一刷盘，事务提交后才计入
+        thumbCountAggregator.add(countMap);
+        return countMap;
+    }
+
+    private void applyChunk(List<Map.Entry<Pair<Long, Long>, Boolean>> entries, Map<Long, Long> countMap) {
+        List<Thumb> pairs = new ArrayList<>(entries.size());
+        for (Map.Entry<Pair<Long, Long>, Boolean> entry : entries) {
+            pairs.add(toThumb(entry.getKey()));
+        }
+        Set<Pair<Long, Long>> existing = new HashSet<>();
+        for (Thumb thumb : thumbMapper.listExistingPairs(pairs)) {
+            existing.add(Pair.of(thumb.getUserId(), thumb.getQuestionId()));
+        }
+
+        List<Thumb> toInsert = new ArrayList<>();
+        List<Thumb> toDelete = new ArrayList<>();
+        for (Map.Entry<Pair<Long, Long>, Boolean> entry : entries) {
+            Pair<Long, Long> pair = entry.getKey();
+            boolean exists = existing.contains(pair);
+            if (entry.getValue() && !exists) {
+                Thumb thumb = toThumb(pair);
+                thumb.setId(IdWorker.getId());
+                toInsert.add(thumb);
+            } else if (!entry.getValue() && exists) {
+                toDelete.add(toThumb(pair));
+            }
+        }
+
+        if (!toInsert.isEmpty()) {
+            int inserted = thumbMapper.insertIgnoreBatch(toInsert);
+            List<Thumb> insertedThumbs = toInsert;
+            if (inserted != toInsert.size()) {
+                // 部分组合已被并发写入，主键由本次生成，按主键查出实际插入的行
+                List<Long> ids = new ArrayList<>(toInsert.size());
+                for (Thumb thumb : toInsert) {
+                    ids.add(thumb.getId());
+                }
+                insertedThumbs = thumbMapper.listPairsByIds(ids);
+                log.warn("部分点赞记录已存在: expected={}, inserted={}", toInsert.size(), insertedThumbs.size());
+            }
+            for (Thumb thumb : insertedThumbs) {
+                countMap.merge(thumb.getQuestionId(), 1L, Long::sum);
+            }
+        }
+        if (!toDelete.isEmpty()) {
+            // 锁定仍存在的行再删除，并发删除同一组合时只有一方计数
+            List<Thumb> locked = thumbMapper.lockExistingPairs(toDelete);
+            if (!locked.isEmpty()) {
+                int deleted = thumbMapper.deleteByPairs(locked);
+                if (deleted != locked.size()) {
+                    throw new BusinessException(ErrorCode.SYSTEM_ERROR,
+                            "删除点赞记录数与锁定数不一致: locked=" + locked.size() + ", deleted=" + deleted);
+                }
+            }
+            for (Thumb thumb : locked) {
+                countMap.merge(thumb.getQuestionId(), -1L, Long::sum);
+            }
+        }
+    }
+
+    private static Thumb toThumb(Pair<Long, Long> pair) {
+        Thumb thumb = new Thumb();
+        thumb.setUserId(pair.getLeft());
+        thumb.setQuestionId(pair.getRight());
+        return thumb;
+    }
+}
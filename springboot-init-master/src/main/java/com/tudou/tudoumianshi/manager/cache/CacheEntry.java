@@ -0,0 +1,28 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import lombok.Getter;
+
+/**
+ * 本地缓存条目：携带版本号与过期时长
+ */
+@Getter
+public class CacheEntry {
+
+    private final Object value;
+
+    /**
+     * 本节点内单调递增的版本号，与失效墓碑比较，不跨节点使用
+     */
+    private final long version;
+
+    /**
+     * 条目存活时长（纳秒），由集群访问次数决定
+     */
+    private final long ttlNanos;
+
+    public CacheEntry(Object value, long version, long ttlNanos) {
+        this.value = value;
+        this.version = version;
+        this.ttlNanos = ttlNanos;
+    }
+}
@@ -1,95 +1,357 @@
 package com.tudou.tudoumianshi.manager.cache;
 
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 二级缓存管理：L1 本地 Caffeine + L2 Redis Hash
+ * <p>
+ * 1. 只有热 key（本地 TopK 或集群热 key）才进入 L1，存活时间随集群访问次数在 cold-ttl 与 hot-ttl 之间增长；
+ * 集群热 key 晋升时主动从 L2 预热
+ * 2. 写操作同时更新 L2、L1，并通过 Redis Pub/Sub 广播失效消息，其他节点收到后无条件移除本地条目；
+ * 版本号只在本节点内比较，用于阻止失效前读到的旧值被并发读放回 L1，不依赖各节点时钟
+ * 3. 命中 / 未命中 / 晋升 / 失效指标注册到 Micrometer
+ */
 @Component
 @Slf4j
 public class CacheManager {
+
+    public static final String INVALIDATE_CHANNEL = "cache:invalidate";
+
     private TopK hotKeyDetector;
-    private Cache<String, Object> localCache;
+    private Cache<String, CacheEntry> localCache;
+
+    /**
+     * 本节点单调递增的版本号
+     */
+    private final AtomicLong localVersion = new AtomicLong();
+
+    /**
+     * 最近的失效记录（key -> 本节点版本），防止并发读把失效前读到的旧值重新放回 L1
+     */
+    private final Cache<String, Long> tombstones = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 上报集群热 key 时的前缀，集群 key 为 前缀 + hashKey:key
+     */
+    private static final String CLUSTER_KEY_PREFIX = "cache:";
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    /**
+     * 热 key 探测实现：concurrent（无锁，默认） / striped（按线程分片） / synchronized（原 HeavyKeeper）
+     */
+    @Value("${hotkey.detector:concurrent}")
+    private String detectorType;
+
+    @Value("${hotkey.stripes:8}")
+    private int stripes;
+
+    @Value("${cache.local.maximum-size:10000}")
+    private long maximumSize;
+
+    /**
+     * L1 存活时间上限（秒），集群访问次数达到 hot-ttl-count 时取该值
+     */
+    @Value("${cache.local.hot-ttl:600}")
+    private long hotTtlSeconds;
+
+    /**
+     * L1 存活时间下限（秒），非集群热 key 取该值
+     */
+    @Value("${cache.local.cold-ttl:30}")
+    private long coldTtlSeconds;
+
+    /**
+     * 存活时间达到上限所需的集群访问次数，其间按次数线性增长
+     */
+    @Value("${cache.local.hot-ttl-count:1000}")
+    private long hotTtlCount;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private ClusterHotKeyManager clusterHotKeyManager;
+
+    private Counter l1HitCounter;
+    private Counter l1MissCounter;
+    private Counter l2HitCounter;
+    private Counter l2MissCounter;
+    private Counter promotionCounter;
+    private Counter invalidationCounter;
 
     @Bean
     public TopK getHotKeyDetector() {
-        hotKeyDetector = new HeavyKeeper(
-                // 监控 Top 100 Key
-                100,
-                // 宽度
-                100000,
-                // 深度
-                5,
-                // 衰减系数
-                0.92,
-                // 最小出现 10 次才记录
-                10
-        );
+        // 监控 Top 100 Key，宽度 100000，深度 5，衰减系数 0.92，最小出现 10 次才记录
+        if ("synchronized".equalsIgnoreCase(detectorType)) {
+            hotKeyDetector = new HeavyKeeper(100, 100000, 5, 0.92, 10);
+        } else if ("striped".equalsIgnoreCase(detectorType)) {
+            hotKeyDetector = new StripedTopK(100, 100000, 5, 0.92, 10, stripes);
+        } else {
+            hotKeyDetector = new ConcurrentHeavyKeeper(100, 100000, 5, 0.92, 10);
+        }
+        log.info("热 key 探测器: {}", hotKeyDetector.getClass().getSimpleName());
         return hotKeyDetector;
     }
 
     @Bean
-    public Cache<String, Object> localCache() {
+    public Cache<String, CacheEntry> localCache() {
         return localCache = Caffeine.newBuilder()
-                .maximumSize(1000)
-                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .maximumSize(maximumSize)
+                // 存活时间由条目自身决定
+                .expireAfter(new Expiry<String, CacheEntry>() {
+                    @Override
+                    public long expireAfterCreate(String key, CacheEntry entry, long currentTime) {
+                        return entry.getTtlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CacheEntry entry, long currentTime, long currentDuration) {
+                        return entry.getTtlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CacheEntry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
                 .build();
     }
-    @Resource
-    private RedisTemplate<String, Object> redisTemplate;
 
-    @Resource
-    private QuestionMapper questionMapper;
+    @PostConstruct
+    public void init() {
+        l1HitCounter = Counter.builder("cache.l1.hit").description("本地缓存命中数").register(meterRegistry);
+        l1MissCounter = Counter.builder("cache.l1.miss").description("本地缓存未命中数").register(meterRegistry);
+        l2HitCounter = Counter.builder("cache.l2.hit").description("Redis 缓存命中数").register(meterRegistry);
+        l2MissCounter = Counter.builder("cache.l2.miss").description("Redis 缓存未命中数").register(meterRegistry);
+        promotionCounter = Counter.builder("cache.l1.promotion").description("晋升到本地缓存的热点 key 数").register(meterRegistry);
+        invalidationCounter = Counter.builder("cache.l1.invalidation").description("因广播失效的本地缓存条目数").register(meterRegistry);
+
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onInvalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+    }
 
     // 辅助方法：构造复合 key
     private String buildCacheKey(String hashKey, String key) {
         return hashKey + ":" + key;
     }
 
+    /**
+     * 依次查询 L1、L2，热 key 读到的 L2 值放入 L1
+     */
     public Object get(String hashKey, String key) {
         // 构造唯一的 composite key
         String compositeKey = buildCacheKey(hashKey, key);
 
         // 1. 先查本地缓存
-        Object value = localCache.getIfPresent(compositeKey);
-        if (value != null) {
-            log.info("本地缓存获取到数据 {} = {}", compositeKey, value);
+        CacheEntry entry = localCache.getIfPresent(compositeKey);
+        if (entry != null) {
+            l1HitCounter.increment();
             // 记录访问次数（每次访问计数 +1）
             hotKeyDetector.add(key, 1);
-            return value;
+            clusterHotKeyManager.record(clusterKey(compositeKey));
+            return entry.getValue();
         }
+        l1MissCounter.increment();
+        // 在读 L2 之前取版本，读取期间发生的失效会使该版本作废
+        long version = localVersion.incrementAndGet();
 
         // 2. 本地缓存未命中，查询 Redis
-        Object redisValue = redisTemplate.opsForHash().get(hashKey, key);
-        if (redisValue == null) {
+        Object value = redisTemplate.opsForHash().get(hashKey, key);
+        if (value == null) {
+            l2MissCounter.increment();
             return null;
         }
+        l2HitCounter.increment();
 
         // 3. 记录访问（计数 +1）
         AddResult addResult = hotKeyDetector.add(key, 1);
+        clusterHotKeyManager.record(clusterKey(compositeKey));
 
-        // 4. 如果是热 Key 且不在本地缓存，则缓存数据
-        if (addResult.isHotKey()) {
-            localCache.put(compositeKey, redisValue);
+        // 4. 如果是热 Key（本地或集群）且不在本地缓存，则缓存数据
+        if (addResult.isHotKey() || clusterHotKeyManager.isClusterHot(clusterKey(compositeKey))) {
+            Long tombstone = tombstones.getIfPresent(compositeKey);
+            if (tombstone == null || tombstone < version) {
+                localCache.put(compositeKey, new CacheEntry(value, version, ttlFor(compositeKey)));
+                promotionCounter.increment();
+            }
         }
 
-        return redisValue;
+        return value;
     }
 
+    /**
+     * 写入：更新 L2，刷新本节点 L1，并通知其他节点失效
+     */
+    public void put(String hashKey, String key, Object value) {
+        String compositeKey = buildCacheKey(hashKey, key);
+        redisTemplate.opsForHash().put(hashKey, key, value);
+        long version = localVersion.incrementAndGet();
+        tombstones.put(compositeKey, version);
+        if (localCache.getIfPresent(compositeKey) != null || clusterHotKeyManager.isClusterHot(clusterKey(compositeKey))) {
+            localCache.put(compositeKey, new CacheEntry(value, version, ttlFor(compositeKey)));
+        }
+        broadcastInvalidate(compositeKey);
+    }
+
+    /**
+     * 删除：删除 L2 字段，移除本节点 L1，并通知其他节点失效
+     */
+    public void evict(String hashKey, String key) {
+        redisTemplate.opsForHash().delete(hashKey, key);
+        invalidate(hashKey, key);
+    }
+
+    /**
+     * L2 已由调用方更新（如 Lua 脚本原子写入）：移除本节点 L1，并通知其他节点失效
+     */
+    public void invalidate(String hashKey, String key) {
+        String compositeKey = buildCacheKey(hashKey, key);
+        tombstones.put(compositeKey, localVersion.incrementAndGet());
+        localCache.invalidate(compositeKey);
+        broadcastInvalidate(compositeKey);
+    }
+
+    /**
+     * 仅更新本节点已存在的 L1 条目，不写 L2、不广播
+     */
     public void putIfPresent(String hashKey, String key, Object value) {
         String compositeKey = buildCacheKey(hashKey, key);
-        Object object = localCache.getIfPresent(compositeKey);
-        if (object == null) {
+        CacheEntry entry = localCache.getIfPresent(compositeKey);
+        if (entry == null) {
             return;
         }
-        localCache.put(compositeKey, value);
+        localCache.put(compositeKey, new CacheEntry(value, localVersion.incrementAndGet(), entry.getTtlNanos()));
+    }
+
+    /**
+     * 淘汰本节点 L1 中字段为指定 key 的条目（key 跌出 TopK 时调用），集群热 key 除外
+     *
+     * @return 淘汰的条目数
+     */
+    public int evictLocal(Collection<String> keys) {
+        int evicted = 0;
+        for (String compositeKey : localCache.asMap().keySet()) {
+            String key = compositeKey.substring(compositeKey.lastIndexOf(':') + 1);
+            if (keys.contains(key) && !clusterHotKeyManager.isClusterHot(clusterKey(compositeKey))) {
+                localCache.invalidate(compositeKey);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public long localSize() {
+        return localCache.estimatedSize();
+    }
+
+    /**
+     * 按集群访问次数决定存活时间：从 cold-ttl 线性增长，达到 hot-ttl-count 后取 hot-ttl
+     */
+    private long ttlFor(String compositeKey) {
+        long count = Math.min(clusterHotKeyManager.getClusterCount(clusterKey(compositeKey)), hotTtlCount);
+        long seconds = coldTtlSeconds + (hotTtlSeconds - coldTtlSeconds) * count / Math.max(hotTtlCount, 1);
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private static String clusterKey(String compositeKey) {
+        return CLUSTER_KEY_PREFIX + compositeKey;
+    }
+
+    private void broadcastInvalidate(String compositeKey) {
+        try {
+            JSONObject message = new JSONObject();
+            message.set("nodeId", nodeId);
+            message.set("key", compositeKey);
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, message.toString());
+        } catch (Exception e) {
+            // 广播失败时其他节点依赖条目自然过期
+            log.warn("广播缓存失效失败: key={}", compositeKey, e);
+        }
+    }
+
+    private void onInvalidate(String payload) {
+        JSONObject message = JSONUtil.parseObj(payload);
+        if (nodeId.equals(message.getStr("nodeId"))) {
+            return;
+        }
+        String compositeKey = message.getStr("key");
+        // 其他节点的版本不可比较，收到即失效；并发读在此之前取的版本均小于墓碑，不会回填旧值
+        tombstones.put(compositeKey, localVersion.incrementAndGet());
+        if (localCache.asMap().remove(compositeKey) != null) {
+            invalidationCounter.increment();
+        }
+    }
+
+    /**
+     * 集群热 key 晋升时从 L2 预热到 L1，各节点无需等到本地再次访问
+     */
+    @EventListener
+    public void onClusterHotKeys(ClusterHotKeyEvent event) {
+        for (String clusterKey : event.getPromoted()) {
+            if (!clusterKey.startsWith(CLUSTER_KEY_PREFIX)) {
+                continue;
+            }
+            String compositeKey = clusterKey.substring(CLUSTER_KEY_PREFIX.length());
+            int separator = compositeKey.lastIndexOf(':');
+            if (separator <= 0 || localCache.getIfPresent(compositeKey) != null) {
+                continue;
+            }
+            try {
+                long version = localVersion.incrementAndGet();
+                Object value = redisTemplate.opsForHash().get(compositeKey.substring(0, separator),
+                        compositeKey.substring(separator + 1));
+                Long tombstone = tombstones.getIfPresent(compositeKey);
+                if (value != null && (tombstone == null || tombstone < version)) {
+                    localCache.put(compositeKey, new CacheEntry(value, version, ttlFor(compositeKey)));
+                    promotionCounter.increment();
+                }
+            } catch (Exception e) {
+                log.warn("预热集群热 key 失败: key={}", compositeKey, e);
+            }
+        }
     }
 
     // 定时清理过期的热 Key 检测数据
@@ -98,5 +360,9 @@ public class CacheManager {
         hotKeyDetector.fading();
     }
 
-
+    // 分片探测器的快照发布，非分片实现为空操作
+    @Scheduled(fixedRate = 500)
+    public void mergeHotKeys() {
+        hotKeyDetector.merge();
+    }
 }
@@ -0,0 +1,29 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Set;
+
+/**
+ * 集群热 key 变更事件，由 {@link ClusterHotKeyManager} 在收到广播后发布
+ */
+@Getter
+public class ClusterHotKeyEvent extends ApplicationEvent {
+
+    /**
+     * 本次新晋升的热 key
+     */
+    private final Set<String> promoted;
+
+    /**
+     * 当前全部集群热 key
+     */
+    private final Set<String> hotKeys;
+
+    public ClusterHotKeyEvent(Object source, Set<String> promoted, Set<String> hotKeys) {
+        super(source);
+        this.promoted = promoted;
+        this.hotKeys = hotKeys;
+    }
+}
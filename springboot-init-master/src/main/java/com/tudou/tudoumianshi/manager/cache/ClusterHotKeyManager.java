@@ -0,0 +1,323 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集群热 key 管理（替代依赖 etcd 的京东 hotkey）
+ * <p>
+ * 1. 各缓存通过 {@link #record} 记录访问，计入独立的低阈值候选草图（最小计数为 1），
+ * 单节点未达到本地热 key 阈值的 key 也会上报
+ * 2. 每个节点定期把候选计数的增量写入自己的 ZSet：hotkey:node:{nodeId}
+ * 3. 抢到锁的节点对存活节点做 ZUNIONSTORE，取总计数达到阈值的 TopK 作为集群热 key
+ * 4. 通过 Redis Pub/Sub 广播热 key 及其集群计数，各节点收到后发布 {@link ClusterHotKeyEvent}，由各缓存主动预热新晋升的 key
+ * <p>
+ * 集群热 key 只在这里维护一份，各缓存通过 {@link #isClusterHot} 查询
+ */
+@Component
+@Slf4j
+public class ClusterHotKeyManager {
+
+    private static final String NODE_KEY_PREFIX = "hotkey:node:";
+    private static final String NODES_KEY = "hotkey:nodes";
+    private static final String CLUSTER_KEY = "hotkey:cluster";
+    private static final String SNAPSHOT_KEY = "hotkey:cluster:snapshot";
+    private static final String LEADER_LOCK_KEY = "hotkey:cluster:leader";
+    public static final String CHANNEL = "hotkey:cluster:channel";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${hotkey.cluster.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 集群维度的最小总访问次数
+     */
+    @Value("${hotkey.cluster.min-count:20}")
+    private int minCount;
+
+    @Value("${hotkey.cluster.top-k:100}")
+    private int topK;
+
+    @Value("${hotkey.cluster.publish-period:2000}")
+    private long publishPeriod;
+
+    /**
+     * 每个节点上报的候选 key 数
+     */
+    @Value("${hotkey.cluster.candidates:1000}")
+    private int candidates;
+
+    /**
+     * 候选草图：不设本地阈值，只用于汇总集群计数
+     */
+    private TopK candidateDetector;
+
+    private String nodeId;
+    private String nodeKey;
+
+    /**
+     * 上次已写入 Redis 的本地计数，用于计算增量
+     */
+    private Map<String, Integer> lastPublished = new HashMap<>();
+
+    /**
+     * 最近一次广播的集群热 key（仅 leader 使用，避免重复广播）
+     */
+    private Map<String, Long> lastBroadcast = Collections.emptyMap();
+
+    /**
+     * 集群热 key -> 集群总计数
+     */
+    private volatile Map<String, Long> clusterHotKeys = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        nodeId = host + "-" + IdUtil.fastSimpleUUID().substring(0, 8);
+        nodeKey = NODE_KEY_PREFIX + nodeId;
+        candidateDetector = new ConcurrentHeavyKeeper(candidates, 100000, 5, 0.92, 1);
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onBroadcast(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL));
+        // 启动时加载最近一次的集群热 key，新节点无需等待下一次广播
+        try {
+            String snapshot = stringRedisTemplate.opsForValue().get(SNAPSHOT_KEY);
+            if (StrUtil.isNotBlank(snapshot)) {
+                onBroadcast(snapshot);
+            }
+        } catch (Exception e) {
+            log.warn("加载集群热 key 快照失败", e);
+        }
+        log.info("集群热 key 管理已启动, nodeId={}", nodeId);
+    }
+
+    /**
+     * 是否为集群热 key
+     */
+    public boolean isClusterHot(String key) {
+        return clusterHotKeys.containsKey(key);
+    }
+
+    /**
+     * 集群总计数，非集群热 key 返回 0
+     */
+    public long getClusterCount(String key) {
+        return clusterHotKeys.getOrDefault(key, 0L);
+    }
+
+    public Map<String, Long> getClusterHotKeys() {
+        return clusterHotKeys;
+    }
+
+    /**
+     * 记录一次访问，各缓存在本地探测器计数的同时调用
+     */
+    public void record(String key) {
+        if (enabled) {
+            candidateDetector.add(key, 1);
+        }
+    }
+
+    /**
+     * 候选计数与本地探测器同步衰减
+     */
+    @Scheduled(fixedRate = 20, timeUnit = TimeUnit.SECONDS)
+    public void fading() {
+        if (enabled) {
+            candidateDetector.fading();
+        }
+    }
+
+    /**
+     * 上报候选计数增量
+     */
+    @Scheduled(fixedRateString = "${hotkey.cluster.publish-period:2000}")
+    public void publishLocal() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Map<String, Integer> current = new HashMap<>();
+            for (Item item : candidateDetector.list()) {
+                current.put(item.key(), item.count());
+            }
+            Set<ZSetOperations.TypedTuple<String>> changed = new HashSet<>();
+            for (Map.Entry<String, Integer> entry : current.entrySet()) {
+                if (!entry.getValue().equals(lastPublished.get(entry.getKey()))) {
+                    changed.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue().doubleValue()));
+                }
+            }
+            List<Object> removed = new ArrayList<>();
+            for (String key : lastPublished.keySet()) {
+                if (!current.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+            if (!changed.isEmpty()) {
+                stringRedisTemplate.opsForZSet().add(nodeKey, changed);
+            }
+            if (!removed.isEmpty()) {
+                stringRedisTemplate.opsForZSet().remove(nodeKey, removed.toArray());
+            }
+            long ttl = nodeTtlMillis();
+            stringRedisTemplate.expire(nodeKey, ttl, TimeUnit.MILLISECONDS);
+            stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, System.currentTimeMillis());
+            lastPublished = current;
+        } catch (Exception e) {
+            // 下次全量重发
+            lastPublished = new HashMap<>();
+            log.warn("上报本地热 key 失败", e);
+        }
+    }
+
+    /**
+     * 聚合所有节点的 TopK，只有抢到锁的节点执行
+     */
+    @Scheduled(fixedRateString = "${hotkey.cluster.publish-period:2000}", initialDelay = 1000)
+    public void aggregate() {
+        if (!enabled) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(LEADER_LOCK_KEY);
+        boolean acquired = false;
+        try {
+            acquired = lock.tryLock(0, publishPeriod, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long deadline = now - nodeTtlMillis();
+            // 清理已下线节点
+            stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, deadline);
+            Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, deadline, Double.MAX_VALUE);
+            if (nodes == null || nodes.isEmpty()) {
+                return;
+            }
+            List<String> nodeKeys = new ArrayList<>(nodes.size());
+            for (String node : nodes) {
+                nodeKeys.add(NODE_KEY_PREFIX + node);
+            }
+            String first = nodeKeys.remove(0);
+            stringRedisTemplate.opsForZSet().unionAndStore(first, nodeKeys, CLUSTER_KEY);
+
+            Set<ZSetOperations.TypedTuple<String>> hot = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(CLUSTER_KEY, minCount, Double.MAX_VALUE, 0, topK);
+            Map<String, Long> hotKeys = new LinkedHashMap<>();
+            if (hot != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : hot) {
+                    hotKeys.put(tuple.getValue(), tuple.getScore() == null ? 0L : tuple.getScore().longValue());
+                }
+            }
+            // 热 key 集合为空且未变化时不再广播；非空时每轮广播，各节点拿到最新计数
+            if (hotKeys.isEmpty() && lastBroadcast.isEmpty()) {
+                return;
+            }
+            String payload = JSONUtil.toJsonStr(hotKeys);
+            stringRedisTemplate.opsForValue().set(SNAPSHOT_KEY, payload, nodeTtlMillis(), TimeUnit.MILLISECONDS);
+            stringRedisTemplate.convertAndSend(CHANNEL, payload);
+            if (!hotKeys.keySet().equals(lastBroadcast.keySet())) {
+                log.info("广播集群热 key, 节点数={}, 热 key 数={}", nodes.size(), hotKeys.size());
+            }
+            lastBroadcast = hotKeys;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("聚合集群热 key 失败", e);
+        } finally {
+            if (acquired && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void onBroadcast(String payload) {
+        Map<String, Long> hotKeys = new LinkedHashMap<>();
+        if (payload.startsWith("[")) {
+            // 滚动发布期间旧版本节点广播的是不带计数的集合
+            for (String key : JSONUtil.toList(payload, String.class)) {
+                hotKeys.put(key, (long) minCount);
+            }
+        } else {
+            JSONObject json = JSONUtil.parseObj(payload);
+            for (String key : json.keySet()) {
+                hotKeys.put(key, json.getLong(key));
+            }
+        }
+        Set<String> promoted = new HashSet<>(hotKeys.keySet());
+        promoted.removeAll(clusterHotKeys.keySet());
+        clusterHotKeys = Collections.unmodifiableMap(hotKeys);
+        if (!promoted.isEmpty()) {
+            log.info("集群热 key 晋升: {}", promoted);
+        }
+        eventPublisher.publishEvent(new ClusterHotKeyEvent(this, promoted, Collections.unmodifiableSet(hotKeys.keySet())));
+    }
+
+    /**
+     * 节点上报超过 3 个周期未更新即视为下线
+     */
+    private long nodeTtlMillis() {
+        return publishPeriod * 3;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(nodeKey);
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+        } catch (Exception e) {
+            log.warn("注销热 key 节点失败, nodeId={}", nodeId, e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 线程安全的紧凑 long 集合，用于缓存热点题目的点赞用户
+ * <p>
+ * 1. 主体为有序 long[]（每个元素 8 字节，二分查找），增量修改记录在两个开放寻址的 long 表中
+ * 2. 增量超过阈值时合并回有序数组
+ * 3. contains 走 StampedLock 乐观读，不加锁、不分配对象
+ * <p>
+ * 元素不能为 Long.MIN_VALUE（用作空槽标记）
+ */
+public class CompactLongSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    /**
+     * 对象头、字段与两个增量表数组头的估算开销
+     */
+    private static final int OVERHEAD_BYTES = 128;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * 有序主体，只在合并时整体替换
+     */
+    private long[] base;
+
+    /**
+     * 不在 base 中的新增元素
+     */
+    private long[] added;
+    private int addedSize;
+
+    /**
+     * 从 base 中删除的元素
+     */
+    private long[] removed;
+    private int removedSize;
+
+    public CompactLongSet(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        // 去重
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        this.base = n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+        this.added = newTable(MIN_TABLE_SIZE);
+        this.removed = newTable(MIN_TABLE_SIZE);
+    }
+
+    public boolean contains(long value) {
+        long stamp = lock.tryOptimisticRead();
+        boolean result = containsUnlocked(value);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = containsUnlocked(value);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    private boolean containsUnlocked(long value) {
+        long[] b = base;
+        if (Arrays.binarySearch(b, value) >= 0) {
+            return !tableContains(removed, value);
+        }
+        return tableContains(added, value);
+    }
+
+    public void add(long value) {
+        checkValue(value);
+        long stamp = lock.writeLock();
+        try {
+            if (Arrays.binarySearch(base, value) >= 0) {
+                if (tableRemove(removed, value)) {
+                    removedSize--;
+                }
+            } else {
+                added = ensureCapacity(added, addedSize + 1);
+                if (tableAdd(added, value)) {
+                    addedSize++;
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long value) {
+        checkValue(value);
+        long stamp = lock.writeLock();
+        try {
+            if (Arrays.binarySearch(base, value) >= 0) {
+                removed = ensureCapacity(removed, removedSize + 1);
+                if (tableAdd(removed, value)) {
+                    removedSize++;
+                }
+            } else if (tableRemove(added, value)) {
+                addedSize--;
+            }
+            compactIfNeeded();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return base.length - removedSize + addedSize;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 占用字节数估算，供 Caffeine weigher 使用
+     */
+    public int weightBytes() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = OVERHEAD_BYTES + 8L * (base.length + added.length + removed.length);
+            return (int) Math.min(Integer.MAX_VALUE, bytes);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 增量超过主体的 1/8 时合并，摊还后每次修改 O(1)
+     */
+    private void compactIfNeeded() {
+        int delta = addedSize + removedSize;
+        if (delta <= MIN_TABLE_SIZE || delta <= base.length >>> 3) {
+            return;
+        }
+        long[] merged = new long[base.length - removedSize + addedSize];
+        int n = 0;
+        for (long value : base) {
+            if (!tableContains(removed, value)) {
+                merged[n++] = value;
+            }
+        }
+        for (long value : added) {
+            if (value != EMPTY) {
+                merged[n++] = value;
+            }
+        }
+        Arrays.sort(merged);
+        base = merged;
+        added = newTable(MIN_TABLE_SIZE);
+        addedSize = 0;
+        removed = newTable(MIN_TABLE_SIZE);
+        removedSize = 0;
+    }
+
+    // region 开放寻址（线性探测）long 表
+
+    private static long[] newTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int slot(long value, int mask) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static boolean tableContains(long[] table, long value) {
+        int mask = table.length - 1;
+        int i = slot(value, mask);
+        // 最多探测一轮，乐观读下表可能正在被修改，避免死循环
+        for (int probes = 0; probes < table.length; probes++) {
+            long current = table[i];
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    private static boolean tableAdd(long[] table, long value) {
+        int mask = table.length - 1;
+        int i = slot(value, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+        return true;
+    }
+
+    /**
+     * 删除后向前回移后续元素，保持探测链连续，无需墓碑
+     */
+    private static boolean tableRemove(long[] table, long value) {
+        int mask = table.length - 1;
+        int i = slot(value, mask);
+        while (table[i] != value) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (table[j] != EMPTY) {
+            int home = slot(table[j], mask);
+            // home 不在 (hole, j] 区间内时，把 j 移到空洞
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        table[hole] = EMPTY;
+        return true;
+    }
+
+    /**
+     * 负载因子不超过 1/2，扩容时生成新数组，乐观读仍可安全读取旧数组
+     */
+    private static long[] ensureCapacity(long[] table, int size) {
+        if (size * 2 <= table.length) {
+            return table;
+        }
+        long[] bigger = newTable(table.length * 2);
+        for (long value : table) {
+            if (value != EMPTY) {
+                tableAdd(bigger, value);
+            }
+        }
+        return bigger;
+    }
+
+    // endregion
+
+    private static void checkValue(long value) {
+        if (value == EMPTY) {
+            throw new IllegalArgumentException("value must not be Long.MIN_VALUE");
+        }
+    }
+}
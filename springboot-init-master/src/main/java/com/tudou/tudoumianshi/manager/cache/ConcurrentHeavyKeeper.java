@@ -0,0 +1,403 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 无锁 HeavyKeeper 实现
+ * <p>
+ * 1. 每个桶用一个 long 打包（高 32 位指纹 + 低 32 位计数），通过 CAS 更新，不再对桶加锁
+ * 2. 每一行使用独立的哈希下标，避免所有行命中同一列
+ * 3. 堆外维护 key -> 堆节点的索引，热 key 判断为 O(1)，不再线性扫描
+ * 4. 热路径不分配对象：直接对 String 的字符做哈希，命中时返回节点上缓存的 AddResult
+ */
+public class ConcurrentHeavyKeeper implements TopK {
+
+    private static final int LOOKUP_TABLE_SIZE = 256;
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * 未命中热 key 时的共享结果
+     */
+    private static final AddResult NOT_HOT = new AddResult(null, false, null);
+
+    private final int k;
+    private final int width;
+    private final int depth;
+    private final int minCount;
+    private final double[] lookupTable;
+
+    /**
+     * 每行一个 AtomicLongArray，元素为打包后的（指纹，计数）
+     */
+    private final AtomicLongArray[] rows;
+
+    /**
+     * 小顶堆，只在结构变化（新 key 入堆、计数上调、衰减）时加锁
+     */
+    private final HeapNode[] heap;
+    private int heapSize;
+    private final ReentrantLock heapLock = new ReentrantLock();
+
+    /**
+     * key -> 堆节点，无锁读取
+     */
+    private final ConcurrentHashMap<String, HeapNode> index;
+
+    /**
+     * 堆满时的最小计数，用于无锁快速拒绝
+     */
+    private volatile int heapMinCount;
+
+    private final BlockingQueue<Item> expelledQueue;
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * 以下统计只在持有 heapLock 时修改
+     */
+    private volatile long promotions;
+    private volatile long demotions;
+    private volatile long expelledDropped;
+
+    public ConcurrentHeavyKeeper(int k, int width, int depth, double decay, int minCount) {
+        this.k = k;
+        this.width = width;
+        this.depth = depth;
+        this.minCount = minCount;
+
+        this.lookupTable = new double[LOOKUP_TABLE_SIZE];
+        for (int i = 0; i < LOOKUP_TABLE_SIZE; i++) {
+            lookupTable[i] = Math.pow(decay, i);
+        }
+
+        this.rows = new AtomicLongArray[depth];
+        for (int i = 0; i < depth; i++) {
+            rows[i] = new AtomicLongArray(width);
+        }
+
+        this.heap = new HeapNode[k];
+        this.index = new ConcurrentHashMap<>(k * 2);
+        this.expelledQueue = new LinkedBlockingQueue<>(EXPELLED_QUEUE_CAPACITY);
+    }
+
+    @Override
+    public AddResult add(String key, int increment) {
+        long hash = hash64(key);
+        // 指纹取高 32 位，保证非 0（0 表示空桶）
+        int fingerprint = (int) (hash >>> 32);
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        // 双重哈希：第 i 行下标 = h1 + i * h2，各行互相独立
+        int h1 = (int) hash;
+        int h2 = (int) mix64(hash) | 1;
+
+        int maxCount = 0;
+        for (int i = 0; i < depth; i++) {
+            int bucketNumber = ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+            int count = addToBucket(rows[i], bucketNumber, fingerprint, increment);
+            if (count > maxCount) {
+                maxCount = count;
+            }
+        }
+
+        total.add(increment);
+
+        if (maxCount < minCount) {
+            return NOT_HOT;
+        }
+
+        // 已在堆中：无锁命中，计数只在能拿到锁时顺带上调（近似值即可）
+        HeapNode node = index.get(key);
+        if (node != null) {
+            if (maxCount > node.count && heapLock.tryLock()) {
+                try {
+                    if (node.slot >= 0 && maxCount > node.count) {
+                        node.count = maxCount;
+                        siftDown(node.slot);
+                        refreshHeapMin();
+                    }
+                } finally {
+                    heapLock.unlock();
+                }
+            }
+            return node.hotResult;
+        }
+
+        // 堆已满且计数不足以替换堆顶，无锁拒绝
+        if (heapSize >= k && maxCount < heapMinCount) {
+            return NOT_HOT;
+        }
+
+        heapLock.lock();
+        try {
+            node = index.get(key);
+            if (node != null) {
+                return node.hotResult;
+            }
+            String expelled = null;
+            if (heapSize < k) {
+                node = new HeapNode(key, maxCount);
+                node.slot = heapSize;
+                heap[heapSize++] = node;
+                siftUp(node.slot);
+            } else {
+                if (maxCount < heap[0].count) {
+                    return NOT_HOT;
+                }
+                HeapNode root = heap[0];
+                expelled = root.key;
+                index.remove(expelled);
+                root.slot = -1;
+                demotions++;
+                if (!expelledQueue.offer(new Item(expelled, root.count))) {
+                    expelledDropped++;
+                }
+
+                node = new HeapNode(key, maxCount);
+                node.slot = 0;
+                heap[0] = node;
+                siftDown(0);
+            }
+            index.put(key, node);
+            promotions++;
+            refreshHeapMin();
+            return expelled == null ? node.hotResult : new AddResult(expelled, true, key);
+        } finally {
+            heapLock.unlock();
+        }
+    }
+
+    /**
+     * CAS 更新单个桶，返回更新后该桶上属于当前 key 的计数（被其他 key 占用时返回 0）
+     */
+    private int addToBucket(AtomicLongArray row, int bucketNumber, int fingerprint, int increment) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            long current = row.get(bucketNumber);
+            int bucketFingerprint = (int) (current >>> 32);
+            int count = (int) (current & COUNT_MASK);
+            long next;
+            int result;
+            if (count == 0) {
+                result = increment;
+                next = pack(fingerprint, increment);
+            } else if (bucketFingerprint == fingerprint) {
+                result = saturatedAdd(count, increment);
+                next = pack(fingerprint, result);
+            } else {
+                // 指纹冲突，按 decay^count 的概率衰减，衰减到 0 时抢占该桶
+                result = 0;
+                int remaining = count;
+                for (int j = 0; j < increment; j++) {
+                    double decay = remaining < LOOKUP_TABLE_SIZE ?
+                            lookupTable[remaining] :
+                            lookupTable[LOOKUP_TABLE_SIZE - 1];
+                    if (random.nextDouble() < decay) {
+                        remaining--;
+                        if (remaining == 0) {
+                            result = increment - j;
+                            break;
+                        }
+                    }
+                }
+                if (result > 0) {
+                    next = pack(fingerprint, result);
+                } else if (remaining == count) {
+                    // 没有发生衰减，无需写回
+                    return 0;
+                } else {
+                    next = pack(bucketFingerprint, remaining);
+                }
+            }
+            if (row.compareAndSet(bucketNumber, current, next)) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public List<Item> list() {
+        heapLock.lock();
+        try {
+            List<Item> result = new ArrayList<>(heapSize);
+            for (int i = 0; i < heapSize; i++) {
+                result.add(new Item(heap[i].key, heap[i].count));
+            }
+            result.sort((a, b) -> Integer.compare(b.count(), a.count()));
+            return result;
+        } finally {
+            heapLock.unlock();
+        }
+    }
+
+    @Override
+    public BlockingQueue<Item> expelled() {
+        return expelledQueue;
+    }
+
+    @Override
+    public void fading() {
+        for (AtomicLongArray row : rows) {
+            for (int j = 0; j < width; j++) {
+                while (true) {
+                    long current = row.get(j);
+                    int count = (int) (current & COUNT_MASK);
+                    if (count == 0) {
+                        break;
+                    }
+                    int faded = count >> 1;
+                    long next = faded == 0 ? 0L : pack((int) (current >>> 32), faded);
+                    if (row.compareAndSet(j, current, next)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        heapLock.lock();
+        try {
+            // 整体减半不改变堆序
+            for (int i = 0; i < heapSize; i++) {
+                heap[i].count = heap[i].count >> 1;
+            }
+            refreshHeapMin();
+        } finally {
+            heapLock.unlock();
+        }
+
+        long current = total.sumThenReset();
+        total.add(current >> 1);
+    }
+
+    @Override
+    public long total() {
+        return total.sum();
+    }
+
+    @Override
+    public double loadFactor() {
+        long used = 0;
+        for (AtomicLongArray row : rows) {
+            for (int j = 0; j < width; j++) {
+                if ((row.get(j) & COUNT_MASK) != 0) {
+                    used++;
+                }
+            }
+        }
+        return (double) used / ((long) width * depth);
+    }
+
+    @Override
+    public long promotions() {
+        return promotions;
+    }
+
+    @Override
+    public long demotions() {
+        return demotions;
+    }
+
+    @Override
+    public long expelledDropped() {
+        return expelledDropped;
+    }
+
+    // region 堆操作（调用方需持有 heapLock）
+
+    private void siftUp(int i) {
+        HeapNode node = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            HeapNode p = heap[parent];
+            if (p.count <= node.count) {
+                break;
+            }
+            heap[i] = p;
+            p.slot = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.slot = i;
+    }
+
+    private void siftDown(int i) {
+        HeapNode node = heap[i];
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < heapSize && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (node.count <= heap[child].count) {
+                break;
+            }
+            heap[i] = heap[child];
+            heap[i].slot = i;
+            i = child;
+        }
+        heap[i] = node;
+        node.slot = i;
+    }
+
+    private void refreshHeapMin() {
+        heapMinCount = heapSize >= k ? heap[0].count : 0;
+    }
+
+    // endregion
+
+    private static long pack(int fingerprint, int count) {
+        return ((long) fingerprint << 32) | (count & COUNT_MASK);
+    }
+
+    private static int saturatedAdd(int a, int b) {
+        int r = a + b;
+        return r < 0 ? Integer.MAX_VALUE : r;
+    }
+
+    /**
+     * FNV-1a 64 位哈希 + 混淆，直接遍历字符，不产生 byte[]
+     */
+    private static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, len = key.length(); i < len; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * MurmurHash3 的 fmix64
+     */
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class HeapNode {
+        final String key;
+        final AddResult hotResult;
+        int count;
+        int slot;
+
+        HeapNode(String key, int count) {
+            this.key = key;
+            this.count = count;
+            this.hotResult = new AddResult(null, true, key);
+        }
+    }
+}
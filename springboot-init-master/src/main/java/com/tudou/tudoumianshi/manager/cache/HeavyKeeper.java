@@ -18,6 +18,9 @@ public class HeavyKeeper implements TopK {
     private final Random random;
     private long total;
     private final int minCount;
+    private long promotions;
+    private long demotions;
+    private long expelledDropped;
 
     public HeavyKeeper(int k, int width, int depth, double decay, int minCount) {
         this.k = k;
@@ -38,7 +41,7 @@ public class HeavyKeeper implements TopK {
         }
 
         this.minHeap = new PriorityQueue<>(Comparator.comparingInt(n -> n.count));
-        this.expelledQueue = new LinkedBlockingQueue<>();
+        this.expelledQueue = new LinkedBlockingQueue<>(EXPELLED_QUEUE_CAPACITY);
         this.random = new Random();
         this.total = 0;
     }
@@ -104,9 +107,13 @@ public class HeavyKeeper implements TopK {
                     Node newNode = new Node(key, maxCount);
                     if (minHeap.size() >= k) {
                         expelled = minHeap.poll().key;
-                        expelledQueue.offer(new Item(expelled, maxCount));
+                        demotions++;
+                        if (!expelledQueue.offer(new Item(expelled, maxCount))) {
+                            expelledDropped++;
+                        }
                     }
                     minHeap.add(newNode);
+                    promotions++;
                     isHot = true;
                 }
             }
@@ -159,6 +166,40 @@ public class HeavyKeeper implements TopK {
         return total;
     }
 
+    @Override
+    public double loadFactor() {
+        long used = 0;
+        for (Bucket[] row : buckets) {
+            for (Bucket bucket : row) {
+                if (bucket.count > 0) {
+                    used++;
+                }
+            }
+        }
+        return (double) used / ((long) width * depth);
+    }
+
+    @Override
+    public long promotions() {
+        synchronized (minHeap) {
+            return promotions;
+        }
+    }
+
+    @Override
+    public long demotions() {
+        synchronized (minHeap) {
+            return demotions;
+        }
+    }
+
+    @Override
+    public long expelledDropped() {
+        synchronized (minHeap) {
+            return expelledDropped;
+        }
+    }
+
     private static class Bucket {
         long fingerprint;
         int count;
@@ -0,0 +1,42 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 热 key 运维端点：/actuator/hotkeys
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    @Resource
+    private TopK hotKeyDetector;
+
+    @Resource
+    private ClusterHotKeyManager clusterHotKeyManager;
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("detector", hotKeyDetector.getClass().getSimpleName());
+        result.put("total", hotKeyDetector.total());
+        result.put("loadFactor", hotKeyDetector.loadFactor());
+        result.put("promotions", hotKeyDetector.promotions());
+        result.put("demotions", hotKeyDetector.demotions());
+        result.put("expelledPending", hotKeyDetector.expelled().size());
+        result.put("expelledDropped", hotKeyDetector.expelledDropped());
+        Map<String, Integer> topK = new LinkedHashMap<>();
+        for (Item item : hotKeyDetector.list()) {
+            topK.put(item.key(), item.count());
+        }
+        result.put("topK", topK);
+        result.put("clusterHotKeys", clusterHotKeyManager.getClusterHotKeys());
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 热 key 监控
+ * <p>
+ * 1. 消费 TopK 的淘汰队列，淘汰本地缓存中对应的条目
+ * 2. 注册 TopK 规模、总流量、草图负载、晋升 / 降级次数等指标
+ */
+@Component
+@Slf4j
+public class HotKeyMonitor {
+
+    private static final int DRAIN_BATCH_SIZE = 1000;
+
+    @Resource
+    private TopK hotKeyDetector;
+
+    @Resource
+    private CacheManager cacheManager;
+
+    @Resource
+    private ThumbCacheManager thumbCacheManager;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("hotkey.topk.size", hotKeyDetector, t -> t.list().size())
+                .description("本节点 TopK 中的 key 数")
+                .register(meterRegistry);
+        Gauge.builder("hotkey.total", hotKeyDetector, TopK::total)
+                .description("热点探测器统计的总访问量（已衰减）")
+                .register(meterRegistry);
+        Gauge.builder("hotkey.sketch.load.factor", hotKeyDetector, TopK::loadFactor)
+                .description("计数草图中非空桶的比例")
+                .register(meterRegistry);
+        Gauge.builder("hotkey.expelled.queue.size", hotKeyDetector, t -> t.expelled().size())
+                .description("待处理的淘汰 key 事件数")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotkey.promotions", hotKeyDetector, TopK::promotions)
+                .description("进入 TopK 的 key 数")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotkey.demotions", hotKeyDetector, TopK::demotions)
+                .description("跌出 TopK 的 key 数")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotkey.expelled.dropped", hotKeyDetector, TopK::expelledDropped)
+                .description("淘汰队列已满被丢弃的事件数")
+                .register(meterRegistry);
+        Gauge.builder("cache.l1.size", cacheManager, CacheManager::localSize)
+                .description("本地缓存条目数估计值")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 消费淘汰队列，跌出 TopK 的 key 不再占用本地缓存
+     */
+    @Scheduled(fixedRate = 1000)
+    public void drainExpelled() {
+        List<Item> items = new ArrayList<>();
+        hotKeyDetector.expelled().drainTo(items, DRAIN_BATCH_SIZE);
+        if (items.isEmpty()) {
+            return;
+        }
+        Set<String> keys = new HashSet<>(items.size() * 2);
+        for (Item item : items) {
+            keys.add(item.key());
+        }
+        // 淘汰后又重新晋升的 key 保留
+        for (Item item : hotKeyDetector.list()) {
+            keys.remove(item.key());
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        int evicted = cacheManager.evictLocal(keys) + thumbCacheManager.evictLocal(keys);
+        log.debug("处理淘汰 key {} 个，淘汰本地缓存 {} 条", keys.size(), evicted);
+    }
+}
@@ -0,0 +1,189 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import cn.dev33.satoken.session.SaSession;
+import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tudou.tudoumianshi.mapper.UserMapper;
+import com.tudou.tudoumianshi.model.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.tudou.tudoumianshi.constant.UserConstant.USER_LOGIN_STATE;
+
+/**
+ * 登录用户缓存
+ * <p>
+ * 读取顺序：本地 Caffeine -> Sa-Token 会话（Redis） -> 数据库。
+ * 用户信息变更时刷新会话中的用户，并广播失效，其他节点收到后无条件移除本地条目。
+ * 版本号只在本节点内比较，用于阻止失效前读到的旧用户被并发读放回本地缓存，不依赖各节点时钟。
+ * 本地缓存不带密码的快照，每次返回副本。
+ */
+@Component
+@Slf4j
+public class LoginUserCacheManager {
+
+    public static final String INVALIDATE_CHANNEL = "user:invalidate";
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    /**
+     * userId -> 带版本的用户
+     */
+    private final Cache<Long, CacheEntry> localCache = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 本节点单调递增的版本号
+     */
+    private final AtomicLong localVersion = new AtomicLong();
+
+    /**
+     * 最近的失效版本（本节点版本），防止并发读把失效前读到的旧用户放回本地缓存
+     */
+    private final Cache<Long, Long> tombstones = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onInvalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 获取登录用户，不存在时返回 null；返回副本，调用方修改不会影响缓存
+     */
+    public User getLoginUser(Object loginId) {
+        Long userId = Long.valueOf(String.valueOf(loginId));
+        CacheEntry entry = localCache.getIfPresent(userId);
+        if (entry != null) {
+            return copyOf((User) entry.getValue());
+        }
+        long version = localVersion.incrementAndGet();
+
+        // 会话中登录时已写入用户信息
+        User user = null;
+        SaSession session = StpUtil.getSessionByLoginId(loginId, false);
+        if (session != null) {
+            Object sessionUser = session.get(USER_LOGIN_STATE);
+            if (sessionUser instanceof User) {
+                user = (User) sessionUser;
+            }
+        }
+        // 会话缺失（如历史会话）时回源数据库并回填会话
+        if (user == null) {
+            user = userMapper.selectById(userId);
+            if (user == null) {
+                return null;
+            }
+            if (session != null) {
+                session.set(USER_LOGIN_STATE, user);
+            }
+        }
+
+        User snapshot = copyOf(user);
+        Long tombstone = tombstones.getIfPresent(userId);
+        if (tombstone == null || tombstone < version) {
+            localCache.put(userId, new CacheEntry(snapshot, version, 0));
+        }
+        return copyOf(snapshot);
+    }
+
+    /**
+     * 本地缓存与返回值均不带密码
+     */
+    private static User copyOf(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        copy.setUserPassword(null);
+        return copy;
+    }
+
+    /**
+     * 用户信息变更后调用：用数据库最新数据刷新会话，并通知所有节点失效
+     */
+    public void refresh(Long userId) {
+        tombstones.put(userId, localVersion.incrementAndGet());
+        localCache.invalidate(userId);
+        try {
+            SaSession session = StpUtil.getSessionByLoginId(userId, false);
+            if (session != null) {
+                User user = userMapper.selectById(userId);
+                if (user != null) {
+                    session.set(USER_LOGIN_STATE, user);
+                } else {
+                    session.delete(USER_LOGIN_STATE);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("刷新会话用户失败: userId={}", userId, e);
+        }
+        broadcast(userId);
+        eventPublisher.publishEvent(new UserChangedEvent(this, userId));
+    }
+
+    /**
+     * 注销时调用：会话由 Sa-Token 删除，这里只清理各节点本地缓存
+     */
+    public void invalidate(Long userId) {
+        tombstones.put(userId, localVersion.incrementAndGet());
+        localCache.invalidate(userId);
+        broadcast(userId);
+    }
+
+    private void broadcast(Long userId) {
+        try {
+            JSONObject message = new JSONObject();
+            message.set("nodeId", nodeId);
+            message.set("userId", userId);
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, message.toString());
+        } catch (Exception e) {
+            // 广播失败时其他节点依赖本地条目过期
+            log.warn("广播用户缓存失效失败: userId={}", userId, e);
+        }
+    }
+
+    private void onInvalidate(String payload) {
+        JSONObject message = JSONUtil.parseObj(payload);
+        if (nodeId.equals(message.getStr("nodeId"))) {
+            return;
+        }
+        Long userId = message.getLong("userId");
+        // 其他节点的版本不可比较，收到即失效
+        tombstones.put(userId, localVersion.incrementAndGet());
+        localCache.invalidate(userId);
+        eventPublisher.publishEvent(new UserChangedEvent(this, userId));
+    }
+}
@@ -0,0 +1,223 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
+import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.mapper.QuestionMapper;
+import com.tudou.tudoumianshi.model.entity.Question;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 题目点赞数读模型
+ * <p>
+ * 1. question:thumbcount hash 保存实时点赞数，由点赞 / 取消点赞 Lua 脚本原子 HINCRBY，只累加已初始化的字段
+ * 2. 读取时一次 HMGET 批量获取，未初始化的字段用数据库值 HSETNX 回填
+ * 3. 定时与数据库对账：数据库由异步链路落库，短暂差异属正常，连续两次对账差值相同才视为漂移并修正
+ */
+@Component
+@Slf4j
+public class QuestionThumbCountManager {
+
+    private static final String RECONCILE_LOCK_KEY = "question:thumbcount:reconcile_lock";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private QuestionMapper questionMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${thumb.count-cache.reconcile-batch-size:500}")
+    private int reconcileBatchSize;
+
+    /**
+     * 上次对账的差值（Redis - 数据库），只在当前对账节点有效
+     */
+    private Map<Long, Long> lastDiffs = new HashMap<>();
+
+    private Counter driftCounter;
+
+    @PostConstruct
+    public void init() {
+        driftCounter = meterRegistry.counter("thumb.count.cache.drift");
+    }
+
+    /**
+     * 批量获取实时点赞数
+     *
+     * @param questions 需带 id、thumbCount，数据库值用于回填未初始化的字段
+     * @return 题目 id -> 点赞数，未初始化且未带数据库值时为 null
+     */
+    public Map<Long, Integer> getThumbCounts(Collection<Question> questions) {
+        if (questions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Question> questionList = new ArrayList<>(questions);
+        List<Object> fields = new ArrayList<>(questionList.size());
+        for (Question question : questionList) {
+            fields.add(String.valueOf(question.getId()));
+        }
+        Map<Long, Integer> result = new HashMap<>(questionList.size() * 2);
+        Map<String, String> missing = new HashMap<>();
+        try {
+            List<Object> values = stringRedisTemplate.opsForHash().multiGet(ThumbConstant.QUESTION_THUMB_COUNT_KEY, fields);
+            for (int i = 0; i < questionList.size(); i++) {
+                Question question = questionList.get(i);
+                Object value = values.get(i);
+                if (value != null) {
+                    result.put(question.getId(), Integer.valueOf(value.toString()));
+                } else {
+                    result.put(question.getId(), question.getThumbCount());
+                    // 未查询 thumbCount 列时不回填
+                    if (question.getThumbCount() != null) {
+                        missing.put(String.valueOf(question.getId()), String.valueOf(question.getThumbCount()));
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    missing.forEach((field, value) -> conn.hSetNX(ThumbConstant.QUESTION_THUMB_COUNT_KEY, field, value));
+                    return null;
+                });
+            }
+        } catch (Exception e) {
+            // Redis 不可用时退回数据库值
+            log.warn("读取题目点赞数失败，使用数据库值", e);
+            for (Question question : questionList) {
+                result.putIfAbsent(question.getId(), question.getThumbCount());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 字段已初始化时累加，用于点赞事件发送失败后的回滚
+     */
+    public void incrementIfPresent(Long questionId, long delta) {
+        stringRedisTemplate.execute(RedisLuaScriptConstant.THUMB_COUNT_INCR_IF_PRESENT_SCRIPT,
+                Collections.singletonList(ThumbConstant.QUESTION_THUMB_COUNT_KEY),
+                String.valueOf(questionId), String.valueOf(delta));
+    }
+
+    /**
+     * 移除已删除题目的字段
+     */
+    public void evict(Collection<Long> questionIds) {
+        Object[] fields = questionIds.stream().map(String::valueOf).toArray();
+        stringRedisTemplate.opsForHash().delete(ThumbConstant.QUESTION_THUMB_COUNT_KEY, fields);
+    }
+
+    /**
+     * 与数据库对账，只有抢到锁的节点执行
+     */
+    @Scheduled(fixedDelayString = "${thumb.count-cache.reconcile-interval:60000}", initialDelay = 60000)
+    public void reconcile() {
+        RLock lock = redissonClient.getLock(RECONCILE_LOCK_KEY);
+        boolean acquired = false;
+        try {
+            acquired = lock.tryLock(0, 10, TimeUnit.MINUTES);
+            if (!acquired) {
+                return;
+            }
+            Map<Long, Long> diffs = new HashMap<>();
+            Map<Long, Long> redisCounts = new HashMap<>(reconcileBatchSize * 2);
+            ScanOptions options = ScanOptions.scanOptions().count(reconcileBatchSize).build();
+            try (Cursor<Map.Entry<Object, Object>> cursor =
+                         stringRedisTemplate.opsForHash().scan(ThumbConstant.QUESTION_THUMB_COUNT_KEY, options)) {
+                while (cursor.hasNext()) {
+                    Map.Entry<Object, Object> entry = cursor.next();
+                    redisCounts.put(Long.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()));
+                    if (redisCounts.size() >= reconcileBatchSize) {
+                        reconcileChunk(redisCounts, diffs);
+                        redisCounts.clear();
+                    }
+                }
+            }
+            if (!redisCounts.isEmpty()) {
+                reconcileChunk(redisCounts, diffs);
+            }
+            lastDiffs = diffs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("题目点赞数对账失败", e);
+        } finally {
+            if (acquired && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void reconcileChunk(Map<Long, Long> redisCounts, Map<Long, Long> diffs) {
+        List<Question> questions = questionMapper.selectList(new LambdaQueryWrapper<Question>()
+                .select(Question::getId, Question::getThumbCount)
+                .in(Question::getId, redisCounts.keySet()));
+        Map<Long, Long> dbCounts = new HashMap<>(questions.size() * 2);
+        for (Question question : questions) {
+            dbCounts.put(question.getId(), question.getThumbCount() != null ? question.getThumbCount().longValue() : 0L);
+        }
+        List<String> removed = new ArrayList<>();
+        Map<String, Long> corrections = new HashMap<>();
+        redisCounts.forEach((questionId, redisCount) -> {
+            Long dbCount = dbCounts.get(questionId);
+            if (dbCount == null) {
+                // 题目已删除
+                removed.add(String.valueOf(questionId));
+                return;
+            }
+            long diff = redisCount - dbCount;
+            if (diff == 0) {
+                return;
+            }
+            if (lastDiffs.getOrDefault(questionId, 0L) == diff) {
+                // 用增量修正，不覆盖对账期间的新点赞
+                corrections.put(String.valueOf(questionId), -diff);
+            } else {
+                diffs.put(questionId, diff);
+            }
+        });
+        if (removed.isEmpty() && corrections.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            if (!removed.isEmpty()) {
+                conn.hDel(ThumbConstant.QUESTION_THUMB_COUNT_KEY, removed.toArray(new String[0]));
+            }
+            corrections.forEach((field, delta) -> conn.hIncrBy(ThumbConstant.QUESTION_THUMB_COUNT_KEY, field, delta));
+            return null;
+        });
+        if (!corrections.isEmpty()) {
+            driftCounter.increment(corrections.size());
+            log.warn("修正题目点赞数漂移: {}", corrections);
+        }
+    }
+}
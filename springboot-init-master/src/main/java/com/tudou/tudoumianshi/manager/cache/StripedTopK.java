@@ -0,0 +1,184 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分片 TopK
+ * <p>
+ * 按线程把请求打散到多个独立的 ConcurrentHeavyKeeper 分片上，同一个热 key 不再让所有 Tomcat 线程争抢同一组桶。
+ * 由定时任务调用 {@link #merge()} 汇总各分片的局部 TopK，发布不可变快照；
+ * 请求路径上的热 key 判断只读取最近一次发布的快照，全程无锁。
+ * 代价是新晋热 key 要等到下一次 merge 才会被识别。
+ */
+public class StripedTopK implements TopK {
+
+    private static final AddResult NOT_HOT = new AddResult(null, false, null);
+
+    private final int k;
+    private final int minCount;
+    private final int mask;
+    private final ConcurrentHeavyKeeper[] stripes;
+
+    private final BlockingQueue<Item> expelledQueue = new LinkedBlockingQueue<>(EXPELLED_QUEUE_CAPACITY);
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * 以下统计只在 merge 中修改
+     */
+    private volatile long promotions;
+    private volatile long demotions;
+    private volatile long expelledDropped;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * @param stripes 分片数，向上取整为 2 的幂
+     */
+    public StripedTopK(int k, int width, int depth, double decay, int minCount, int stripes) {
+        this.k = k;
+        this.minCount = minCount;
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        if (stripes <= 1) {
+            n = 1;
+        }
+        this.mask = n - 1;
+        this.stripes = new ConcurrentHeavyKeeper[n];
+        // 同一个 key 的计数会被分摊到各分片，分片内的阈值与宽度按分片数缩小，总内存与单实例持平
+        int stripeWidth = Math.max(width / n, 1024);
+        int stripeMinCount = Math.max(minCount / n, 1);
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new ConcurrentHeavyKeeper(k, stripeWidth, depth, decay, stripeMinCount);
+        }
+    }
+
+    @Override
+    public AddResult add(String key, int increment) {
+        stripeOf(Thread.currentThread()).add(key, increment);
+        total.add(increment);
+        AddResult result = snapshot.hot.get(key);
+        return result != null ? result : NOT_HOT;
+    }
+
+    private ConcurrentHeavyKeeper stripeOf(Thread thread) {
+        long id = thread.getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return stripes[h & mask];
+    }
+
+    /**
+     * 合并各分片的局部 TopK 并发布新快照，跌出 TopK 的 key 进入淘汰队列
+     */
+    @Override
+    public synchronized void merge() {
+        Map<String, Integer> merged = new HashMap<>(k * stripes.length * 2);
+        for (ConcurrentHeavyKeeper stripe : stripes) {
+            for (Item item : stripe.list()) {
+                merged.merge(item.key(), item.count(), Integer::sum);
+            }
+            // 分片内的淘汰只是局部视角，全局淘汰以快照差异为准
+            stripe.expelled().clear();
+        }
+
+        List<Item> items = new ArrayList<>(merged.size());
+        for (Map.Entry<String, Integer> entry : merged.entrySet()) {
+            if (entry.getValue() >= minCount) {
+                items.add(new Item(entry.getKey(), entry.getValue()));
+            }
+        }
+        items.sort((a, b) -> Integer.compare(b.count(), a.count()));
+        if (items.size() > k) {
+            items = new ArrayList<>(items.subList(0, k));
+        }
+
+        Snapshot previous = snapshot;
+        Map<String, AddResult> hot = new HashMap<>(items.size() * 2);
+        for (Item item : items) {
+            AddResult cached = previous.hot.get(item.key());
+            if (cached == null) {
+                cached = new AddResult(null, true, item.key());
+                promotions++;
+            }
+            hot.put(item.key(), cached);
+        }
+        for (Item item : previous.items) {
+            if (!hot.containsKey(item.key())) {
+                demotions++;
+                if (!expelledQueue.offer(item)) {
+                    expelledDropped++;
+                }
+            }
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(items), hot);
+    }
+
+    @Override
+    public List<Item> list() {
+        return snapshot.items;
+    }
+
+    @Override
+    public BlockingQueue<Item> expelled() {
+        return expelledQueue;
+    }
+
+    @Override
+    public void fading() {
+        for (ConcurrentHeavyKeeper stripe : stripes) {
+            stripe.fading();
+        }
+        long current = total.sumThenReset();
+        total.add(current >> 1);
+        merge();
+    }
+
+    @Override
+    public long total() {
+        return total.sum();
+    }
+
+    @Override
+    public double loadFactor() {
+        double sum = 0;
+        for (ConcurrentHeavyKeeper stripe : stripes) {
+            sum += stripe.loadFactor();
+        }
+        return sum / stripes.length;
+    }
+
+    @Override
+    public long promotions() {
+        return promotions;
+    }
+
+    @Override
+    public long demotions() {
+        return demotions;
+    }
+
+    @Override
+    public long expelledDropped() {
+        return expelledDropped;
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyMap());
+
+        final List<Item> items;
+        final Map<String, AddResult> hot;
+
+        Snapshot(List<Item> items, Map<String, AddResult> hot) {
+            this.items = items;
+            this.hot = hot;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import com.tudou.tudoumianshi.common.ErrorCode;
+import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
+import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.mapper.ThumbMapper;
+import com.tudou.tudoumianshi.model.entity.Thumb;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 点赞关系布隆过滤器
+ * <p>
+ * 以 (userId, questionId) 为元素，常见的"未点赞"判断在本地直接返回，不再访问 Redis。
+ * 1. Redis 位数组 thumb_bloom:bits 是权威副本：新增点赞由脚本同步 SETBIT、分配递增序号并广播，Redis 写入失败时点赞失败
+ * 2. 本地位数组为 AtomicLongArray，读写无锁，从 Redis 加载后按广播增量更新；按序号检测丢失的广播，
+ *    有缺口超过一个同步周期则回退到 Redis 查询并重新加载，只有与 Redis 副本一致时才给出"一定没有"的结论
+ * 3. 布隆过滤器不支持删除，取消点赞只会带来假阳性，由单个节点定时重建以清除：
+ *    重建数据取 Redis 点赞状态与 thumb 表的并集，覆盖尚未落库的点赞；重建期间的新增同时写入新位数组，完成后原子替换，各节点按版本号重新加载
+ */
+@Component
+@Slf4j
+public class ThumbBloomFilter {
+
+    public static final String ADD_CHANNEL = "thumb:bloom:add";
+
+    private static final String REDIS_BITS_KEY = "thumb_bloom:bits";
+
+    private static final String BUILDING_KEY = "thumb_bloom:building";
+
+    private static final String UPLOAD_KEY = "thumb_bloom:upload";
+
+    private static final String SEQ_KEY = "thumb_bloom:seq";
+
+    private static final String GENERATION_KEY = "thumb_bloom:generation";
+
+    private static final String REBUILD_LOCK_KEY = "thumb_bloom:rebuild_lock";
+
+    private static final int REBUILD_BATCH_SIZE = 5000;
+
+    private static final int SCAN_COUNT = 1000;
+
+    /**
+     * 加载时每次 GETRANGE 读取的字节数，须为 8 的倍数
+     */
+    private static final int LOAD_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * 标记重建开始后等待的时间：标记前已写入布隆过滤器、尚未写入点赞状态的点赞在此期间完成写入，之后的扫描能读到
+     */
+    private static final long REBUILD_GRACE_MILLIS = 2000;
+
+    @Resource
+    private ThumbMapper thumbMapper;
+
+    @Resource
+    private ThumbStateStore thumbStateStore;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${thumb.bloom.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 预计点赞关系数，各节点必须一致
+     */
+    @Value("${thumb.bloom.expected-insertions:10000000}")
+    private long expectedInsertions;
+
+    /**
+     * 期望误判率，各节点必须一致
+     */
+    @Value("${thumb.bloom.fpp:0.01}")
+    private double fpp;
+
+    private long numBits;
+    private int numHashFunctions;
+
+    private volatile AtomicLongArray bits;
+
+    /**
+     * 加载中的新位数组，非 null 时新增点赞需要双写
+     */
+    private volatile AtomicLongArray loading;
+
+    /**
+     * 本地位数组与 Redis 副本一致时才能给出"一定没有"的结论
+     */
+    private volatile boolean ready;
+
+    /**
+     * 已连续应用的最大序号、收到的不连续序号、上个同步周期看到的 Redis 序号、已加载的版本
+     */
+    private final Object seqLock = new Object();
+    private long appliedSeq;
+    private final TreeSet<Long> pendingSeqs = new TreeSet<>();
+    private long observedSeq;
+    private long loadedGeneration;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    private ExecutorService rebuilder;
+
+    private final LongAdder definiteNegatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder truePositives = new LongAdder();
+
+    private Counter lostCounter;
+    private Counter reloadCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        double ln2 = Math.log(2);
+        numBits = Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2)));
+        // 向上取整到 64 的倍数
+        numBits = (numBits + 63) & ~63L;
+        numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * ln2));
+        bits = new AtomicLongArray((int) (numBits >>> 6));
+        rebuilder = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("thumb-bloom-rebuild-"));
+
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onRemoteAdd(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(ADD_CHANNEL));
+
+        Gauge.builder("thumb.bloom.fpp.measured", this, ThumbBloomFilter::measuredFpp)
+                .description("点赞布隆过滤器实测误判率")
+                .register(meterRegistry);
+        Gauge.builder("thumb.bloom.fpp.estimated", this, ThumbBloomFilter::estimatedFpp)
+                .description("按置位比例估算的误判率")
+                .register(meterRegistry);
+        Gauge.builder("thumb.bloom.ready", this, f -> f.ready ? 1 : 0)
+                .description("是否在本地给出未点赞结论")
+                .register(meterRegistry);
+        FunctionCounter.builder("thumb.bloom.negative", definiteNegatives, LongAdder::sum)
+                .description("本地判定为一定未点赞的查询数")
+                .register(meterRegistry);
+        FunctionCounter.builder("thumb.bloom.false.positive", falsePositives, LongAdder::sum)
+                .description("布隆过滤器放行但 Redis 未点赞的查询数")
+                .register(meterRegistry);
+        lostCounter = meterRegistry.counter("thumb.bloom.lost");
+        reloadCounter = meterRegistry.counter("thumb.bloom.reload");
+
+        log.info("点赞布隆过滤器初始化: bits={}, hashFunctions={}", numBits, numHashFunctions);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * @return false 表示一定没有点赞；true 表示可能点赞，需要继续查询
+     */
+    public boolean mightContain(Long userId, Long questionId) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        if (!containsLocal(userId, questionId)) {
+            definiteNegatives.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean containsLocal(Long userId, Long questionId) {
+        AtomicLongArray current = bits;
+        long h1 = hash(userId, questionId);
+        long h2 = mix(h1);
+        for (int i = 0; i < numHashFunctions; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((current.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次"可能点赞"查询的真实结果，用于统计实际误判率
+     */
+    public void recordOutcome(boolean actual) {
+        if (actual) {
+            truePositives.increment();
+        } else {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * 新增点赞：写入本地与 Redis 位数组并广播，须在写入点赞状态之前调用
+     *
+     * @throws BusinessException Redis 写入失败，此时不能继续点赞
+     */
+    public void put(Long userId, Long questionId) {
+        if (!enabled) {
+            return;
+        }
+        putLocal(userId, questionId);
+        List<String> args = new ArrayList<>(numHashFunctions + 2);
+        args.add(ADD_CHANNEL);
+        args.add(userId + ":" + questionId);
+        long h1 = hash(userId, questionId);
+        long h2 = mix(h1);
+        for (int i = 0; i < numHashFunctions; i++) {
+            args.add(String.valueOf(((h1 + i * h2) & Long.MAX_VALUE) % numBits));
+        }
+        try {
+            stringRedisTemplate.execute(RedisLuaScriptConstant.BLOOM_ADD_SCRIPT,
+                    Arrays.asList(REDIS_BITS_KEY, BUILDING_KEY, SEQ_KEY), args.toArray());
+        } catch (Exception e) {
+            log.error("布隆过滤器写入 Redis 失败: userId={}, questionId={}", userId, questionId, e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "点赞失败，请稍后重试");
+        }
+        // 执行期间本地位数组可能已被重新加载替换
+        putLocal(userId, questionId);
+    }
+
+    /**
+     * 本地未包含时新增，用于 binlog 同步，避免业务代码已写入的点赞重复广播
+     */
+    public void putIfAbsent(Long userId, Long questionId) {
+        if (enabled && ready && containsLocal(userId, questionId)) {
+            return;
+        }
+        put(userId, questionId);
+    }
+
+    private void putLocal(Long userId, Long questionId) {
+        // 先写加载中的数组，再写当前数组；写完发现已切换则补写，保证切换前后都不丢
+        AtomicLongArray target = loading;
+        if (target != null) {
+            setBits(target, userId, questionId);
+        }
+        AtomicLongArray current = bits;
+        setBits(current, userId, questionId);
+        if (bits != current) {
+            setBits(bits, userId, questionId);
+        }
+    }
+
+    /**
+     * 广播格式 seq:userId:questionId
+     */
+    private void onRemoteAdd(String message) {
+        String[] parts = message.split(":");
+        if (parts.length != 3) {
+            log.warn("非法的布隆过滤器广播: {}", message);
+            return;
+        }
+        try {
+            putLocal(Long.valueOf(parts[1]), Long.valueOf(parts[2]));
+            long seq = Long.parseLong(parts[0]);
+            synchronized (seqLock) {
+                if (seq > appliedSeq) {
+                    pendingSeqs.add(seq);
+                    advanceAppliedSeq();
+                }
+            }
+        } catch (NumberFormatException e) {
+            log.warn("非法的布隆过滤器广播: {}", message);
+        }
+    }
+
+    private void advanceAppliedSeq() {
+        while (!pendingSeqs.isEmpty() && pendingSeqs.first() <= appliedSeq + 1) {
+            appliedSeq = Math.max(appliedSeq, pendingSeqs.pollFirst());
+        }
+    }
+
+    private void setBits(AtomicLongArray target, Long userId, Long questionId) {
+        long h1 = hash(userId, questionId);
+        long h2 = mix(h1);
+        for (int i = 0; i < numHashFunctions; i++) {
+            setBit(target, ((h1 + i * h2) & Long.MAX_VALUE) % numBits);
+        }
+    }
+
+    private static void setBit(AtomicLongArray target, long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = target.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!target.compareAndSet(word, old, old | mask));
+    }
+
+    /**
+     * 与 Redis 副本对齐：
+     * 1. 尚未构建过则触发重建，期间不给出否定结论
+     * 2. 版本号变化（其他节点重建完成）时重新加载
+     * 3. 上个周期已分配的序号仍未全部收到，说明广播丢失，回退到 Redis 查询并重新加载
+     */
+    @Scheduled(fixedDelayString = "${thumb.bloom.sync-interval:1000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        List<String> values;
+        try {
+            values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(SEQ_KEY, GENERATION_KEY));
+        } catch (Exception e) {
+            // 无法确认是否漏收广播
+            ready = false;
+            log.warn("读取布隆过滤器序号失败", e);
+            return;
+        }
+        long seq = parseLong(values == null ? null : values.get(0));
+        long generation = parseLong(values == null ? null : values.get(1));
+        if (generation == 0) {
+            ready = false;
+            startRebuild();
+            return;
+        }
+        boolean lost;
+        boolean reload;
+        synchronized (seqLock) {
+            lost = ready && appliedSeq < observedSeq;
+            reload = !ready || lost || generation != loadedGeneration;
+            observedSeq = seq;
+        }
+        if (lost) {
+            ready = false;
+            lostCounter.increment();
+            log.warn("布隆过滤器广播丢失，回退到 Redis 并重新加载");
+        }
+        if (reload) {
+            reload();
+        }
+    }
+
+    /**
+     * 从 Redis 副本加载：先读序号再读位数组，序号之前的新增都已在位数组中；加载期间收到的广播双写
+     */
+    private synchronized void reload() {
+        AtomicLongArray target = new AtomicLongArray((int) (numBits >>> 6));
+        loading = target;
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(SEQ_KEY, GENERATION_KEY));
+            long seq = parseLong(values == null ? null : values.get(0));
+            long generation = parseLong(values == null ? null : values.get(1));
+            byte[] key = REDIS_BITS_KEY.getBytes(StandardCharsets.UTF_8);
+            Long length = stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.strLen(key));
+            if (length == null || length == 0) {
+                // 副本丢失（如 Redis 故障切换），重建前不给出否定结论
+                ready = false;
+                startRebuild();
+                return;
+            }
+            if (length << 3 != numBits) {
+                // 各节点配置不一致，本节点无法使用该副本
+                ready = false;
+                log.error("布隆过滤器 Redis 副本大小 {} 位与本地 {} 位不一致，请检查各节点配置", length << 3, numBits);
+                return;
+            }
+            // 分段读取，避免单次 GET 整个位数组阻塞 Redis；期间只会新增置位，替换版本后由下个同步周期重新加载
+            for (long offset = 0; offset < length; offset += LOAD_CHUNK_BYTES) {
+                long start = offset;
+                long end = Math.min(offset + LOAD_CHUNK_BYTES, length) - 1;
+                byte[] chunk = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                        connection.getRange(key, start, end));
+                orRedisBitmap(target, chunk, start);
+            }
+            bits = target;
+            synchronized (seqLock) {
+                appliedSeq = Math.max(appliedSeq, seq);
+                pendingSeqs.headSet(appliedSeq, true).clear();
+                advanceAppliedSeq();
+                observedSeq = seq;
+                if (generation != loadedGeneration) {
+                    falsePositives.reset();
+                    truePositives.reset();
+                    definiteNegatives.reset();
+                }
+                loadedGeneration = generation;
+            }
+            ready = true;
+            reloadCounter.increment();
+        } catch (Exception e) {
+            ready = false;
+            log.error("布隆过滤器加载失败", e);
+        } finally {
+            loading = null;
+        }
+    }
+
+    /**
+     * 每天凌晨 3 点重建，清除取消点赞留下的假阳性
+     */
+    @Scheduled(cron = "0 0 3 * * *")
+    public void scheduledRebuild() {
+        if (enabled) {
+            startRebuild();
+        }
+    }
+
+    private void startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuilder.execute(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rebuilding.set(false);
+            log.error("布隆过滤器重建任务提交失败", e);
+        }
+    }
+
+    /**
+     * 由抢到锁的节点重建，其他节点在版本号变化后重新加载
+     */
+    public void rebuild() {
+        RLock lock = redissonClient.getLock(REBUILD_LOCK_KEY);
+        if (!lock.tryLock()) {
+            log.info("其他节点正在重建布隆过滤器，跳过");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // 标记重建开始，之后的新增由脚本同时写入 BUILDING_KEY
+            stringRedisTemplate.delete(UPLOAD_KEY);
+            stringRedisTemplate.opsForValue().set(BUILDING_KEY, "");
+            Thread.sleep(REBUILD_GRACE_MILLIS);
+
+            AtomicLongArray target = new AtomicLongArray((int) (numBits >>> 6));
+            long fromMysql = addMysqlThumbs(target);
+            long fromRedis = addRedisThumbs(target);
+            byte[] upload = toRedisBitmap(target);
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.set(UPLOAD_KEY.getBytes(StandardCharsets.UTF_8), upload);
+                return null;
+            });
+            Long generation = stringRedisTemplate.execute(RedisLuaScriptConstant.BLOOM_PUBLISH_REBUILD_SCRIPT,
+                    Arrays.asList(BUILDING_KEY, UPLOAD_KEY, REDIS_BITS_KEY, GENERATION_KEY));
+            log.info("布隆过滤器重建完成: version={}, MySQL 点赞数={}, Redis 点赞数={}, 耗时={}ms",
+                    generation, fromMysql, fromRedis, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stringRedisTemplate.delete(Arrays.asList(BUILDING_KEY, UPLOAD_KEY));
+        } catch (Exception e) {
+            // 当前 Redis 副本不变，下次重建重试
+            stringRedisTemplate.delete(Arrays.asList(BUILDING_KEY, UPLOAD_KEY));
+            log.error("布隆过滤器重建失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按主键分批扫描 thumb 表
+     */
+    private long addMysqlThumbs(AtomicLongArray target) {
+        long lastId = 0;
+        long total = 0;
+        while (true) {
+            List<Thumb> batch = thumbMapper.listThumbsAfterId(lastId, REBUILD_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (Thumb thumb : batch) {
+                setBits(target, thumb.getUserId(), thumb.getQuestionId());
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            total += batch.size();
+            if (batch.size() < REBUILD_BATCH_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 遍历 Redis 中的用户点赞状态，包含尚未消费落库的点赞
+     */
+    private long addRedisThumbs(AtomicLongArray target) {
+        long total = 0;
+        String prefix = ThumbConstant.USER_THUMB_KEY_PREFIX;
+        String cursor = "0";
+        do {
+            List<?> page = stringRedisTemplate.execute(RedisLuaScriptConstant.SCAN_PAGE_SCRIPT,
+                    Collections.emptyList(), cursor, prefix + "*", String.valueOf(SCAN_COUNT));
+            List<Long> userIds = new ArrayList<>();
+            for (Object key : (List<?>) page.get(1)) {
+                String suffix = key.toString().substring(prefix.length());
+                if (StringUtils.isNumeric(suffix)) {
+                    userIds.add(Long.valueOf(suffix));
+                }
+            }
+            if (!userIds.isEmpty()) {
+                for (Map.Entry<Long, Set<Long>> entry : thumbStateStore.getThumbQuestionIds(userIds).entrySet()) {
+                    for (Long questionId : entry.getValue()) {
+                        setBits(target, entry.getKey(), questionId);
+                        total++;
+                    }
+                }
+            }
+            cursor = page.get(0).toString();
+        } while (!"0".equals(cursor));
+        return total;
+    }
+
+    /**
+     * Redis bitmap 按大端位序（第 0 位为首字节最高位），与 SETBIT 一致；
+     * 按大端读出的 8 字节整体位反转后即为本地以最低位起始的字
+     */
+    private static byte[] toRedisBitmap(AtomicLongArray source) {
+        ByteBuffer buffer = ByteBuffer.allocate(source.length() * 8);
+        for (int w = 0; w < source.length(); w++) {
+            buffer.putLong(Long.reverse(source.get(w)));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param offset 分段在 Redis 位数组中的起始字节，须为 8 的倍数
+     */
+    private static void orRedisBitmap(AtomicLongArray target, byte[] bytes, long offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int word = (int) (offset >>> 3);
+        while (buffer.remaining() >= 8 && word < target.length()) {
+            long value = Long.reverse(buffer.getLong());
+            if (value != 0) {
+                // 加载期间收到的广播会并发写入同一数组
+                target.accumulateAndGet(word, value, (a, b) -> a | b);
+            }
+            word++;
+        }
+    }
+
+    /**
+     * 实际误判率 = 假阳性 / (假阳性 + 本地判定为否)
+     */
+    public double measuredFpp() {
+        long fp = falsePositives.sum();
+        long negatives = fp + definiteNegatives.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    /**
+     * 按置位比例估算的误判率：fillRatio ^ k
+     */
+    public double estimatedFpp() {
+        AtomicLongArray current = bits;
+        if (current == null) {
+            return 0;
+        }
+        long set = 0;
+        for (int i = 0; i < current.length(); i++) {
+            set += Long.bitCount(current.get(i));
+        }
+        return Math.pow((double) set / numBits, numHashFunctions);
+    }
+
+    private static long parseLong(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static long hash(long userId, long questionId) {
+        return mix(userId * 0x9E3779B97F4A7C15L ^ mix(questionId));
+    }
+
+    /**
+     * MurmurHash3 的 fmix64
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -4,13 +4,14 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.tudou.tudoumianshi.mapper.ThumbMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -19,23 +20,37 @@ import java.util.concurrent.TimeUnit;
 @Component
 @Slf4j
 public class ThumbCacheManager {
+
+    private static final String THUMB_KEY_PREFIX = "question:thumb:";
     
     @Resource
     private ThumbMapper thumbMapper;
     
     @Resource
     private TopK hotKeyDetector;
+
+    @Resource
+    private ClusterHotKeyManager clusterHotKeyManager;
     
-    private Cache<String, Set<Long>> thumbCache;
-    
+    /**
+     * 题目ID -> 点赞用户集合
+     */
+    private Cache<Long, CompactLongSet> thumbCache;
+
+    /**
+     * 点赞关系缓存的最大字节数
+     */
+    @Value("${thumb.cache.maximum-weight:67108864}")
+    private long maximumWeight;
+
     @Bean
-    public Cache<String, Set<Long>> thumbCache() {
-        // 使用明确的类型参数，避免JDK 10+的var类型推断
-        Caffeine<Object, Object> builder = Caffeine.newBuilder();
-        return thumbCache = builder
-                .maximumSize(1000)
+    public Cache<Long, CompactLongSet> thumbCache() {
+        // 按实际占用字节数淘汰，点赞数多的题目权重更大
+        return thumbCache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Long questionId, CompactLongSet userIds) -> userIds.weightBytes())
                 .expireAfterWrite(5, TimeUnit.MINUTES)
-                .<String, Set<Long>>build();
+                .build();
     }
     
     /**
@@ -43,24 +58,74 @@ public class ThumbCacheManager {
      * @param questionId 题目ID
      */
     public void cacheThumbRelations(Long questionId) {
-        String key = "question:thumb:" + questionId;
+        String key = THUMB_KEY_PREFIX + questionId;
         
-        // 检查是否需要缓存（是否是热点）
+        // 检查是否需要缓存（是否是本地或集群热点）
         AddResult result = hotKeyDetector.add(key, 1);
-        if (result.isHotKey()) {
-            // 已经缓存过就不再重复加载
-            if (thumbCache.getIfPresent(key) != null) {
-                return;
+        clusterHotKeyManager.record(key);
+        if (result.isHotKey() || clusterHotKeyManager.isClusterHot(key)) {
+            loadThumbRelations(questionId);
+        }
+    }
+
+    /**
+     * 集群热 key 晋升时预热点赞关系，各节点无需等到本地计数达到阈值
+     */
+    @EventListener
+    public void onClusterHotKeys(ClusterHotKeyEvent event) {
+        for (String key : event.getPromoted()) {
+            if (!key.startsWith(THUMB_KEY_PREFIX)) {
+                continue;
+            }
+            try {
+                loadThumbRelations(Long.valueOf(key.substring(THUMB_KEY_PREFIX.length())));
+            } catch (Exception e) {
+                log.warn("预热点赞关系失败: key={}", key, e);
             }
-            
-            // 查询该题目所有点赞用户ID
-            List<Long> userIds = thumbMapper.getThumbUserIdsByQuestionId(questionId);
-            if (userIds != null && !userIds.isEmpty()) {
-                // 明确指定Set的类型
-                Set<Long> userIdSet = new HashSet<Long>(userIds);
-                thumbCache.put(key, userIdSet);
-                log.info("缓存热点题目点赞关系: questionId={}, 点赞用户数={}", questionId, userIds.size());
+        }
+    }
+
+    /**
+     * 淘汰跌出 TopK 的题目点赞关系，集群热 key 除外
+     *
+     * @return 淘汰的条目数
+     */
+    public int evictLocal(Collection<String> keys) {
+        int evicted = 0;
+        for (String key : keys) {
+            if (!key.startsWith(THUMB_KEY_PREFIX) || clusterHotKeyManager.isClusterHot(key)) {
+                continue;
+            }
+            Long questionId;
+            try {
+                questionId = Long.valueOf(key.substring(THUMB_KEY_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (thumbCache.asMap().remove(questionId) != null) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private void loadThumbRelations(Long questionId) {
+        // 已经缓存过就不再重复加载
+        if (thumbCache.getIfPresent(questionId) != null) {
+            return;
+        }
+
+        // 查询该题目所有点赞用户ID
+        List<Long> userIds = thumbMapper.getThumbUserIdsByQuestionId(questionId);
+        if (userIds != null && !userIds.isEmpty()) {
+            long[] values = new long[userIds.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = userIds.get(i);
             }
+            CompactLongSet userIdSet = new CompactLongSet(values);
+            thumbCache.asMap().putIfAbsent(questionId, userIdSet);
+            log.info("缓存热点题目点赞关系: questionId={}, 点赞用户数={}, 占用字节={}",
+                    questionId, userIdSet.size(), userIdSet.weightBytes());
         }
     }
     
@@ -71,12 +136,11 @@ public class ThumbCacheManager {
      * @return 是否点赞
      */
     public Boolean hasThumbInCache(Long questionId, Long userId) {
-        String key = "question:thumb:" + questionId;
-        Set<Long> userIdSet = thumbCache.getIfPresent(key);
+        CompactLongSet userIdSet = thumbCache.getIfPresent(questionId);
         
         if (userIdSet != null) {
             boolean hasThumb = userIdSet.contains(userId);
-            log.info("从本地缓存判断点赞状态: userId={}, questionId={}, hasThumb={}", userId, questionId, hasThumb);
+            log.debug("从本地缓存判断点赞状态: userId={}, questionId={}, hasThumb={}", userId, questionId, hasThumb);
             return hasThumb;
         }
         
@@ -90,19 +154,15 @@ public class ThumbCacheManager {
      * @param isAdd 是否是添加点赞
      */
     public void updateThumbCache(Long questionId, Long userId, boolean isAdd) {
-        String key = "question:thumb:" + questionId;
-        Set<Long> userIdSet = thumbCache.getIfPresent(key);
-        
-        if (userIdSet != null) {
-            // 本地有缓存，更新缓存
+        // 本地有缓存才更新；在 compute 中修改，Caffeine 会重新计算权重
+        thumbCache.asMap().computeIfPresent(questionId, (id, userIdSet) -> {
             if (isAdd) {
                 userIdSet.add(userId);
-                log.info("本地缓存添加点赞关系: userId={}, questionId={}", userId, questionId);
             } else {
                 userIdSet.remove(userId);
-                log.info("本地缓存移除点赞关系: userId={}, questionId={}", userId, questionId);
             }
-            thumbCache.put(key, userIdSet);
-        }
+            return userIdSet;
+        });
+        log.debug("更新本地点赞关系: userId={}, questionId={}, isAdd={}", userId, questionId, isAdd);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
+import com.tudou.tudoumianshi.constant.ThumbConstant;
+import com.tudou.tudoumianshi.model.enums.LuaStatusEnum;
+import com.tudou.tudoumianshi.utils.RedisKeyUtil;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis 中的用户点赞状态：每个用户一个 thumb:{userId} hash，field 为题目 id
+ * <p>
+ * 单条读取经 CacheManager 二级缓存，写入后通过 CacheManager 广播失效，各节点不会读到旧的 L1 条目
+ */
+@Component
+public class ThumbStateStore {
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private CacheManager cacheManager;
+
+    /**
+     * 原子检查并点赞，同时累加题目点赞数读模型并分配事件序号
+     *
+     * @return -1 已点赞；正数为该用户本次事件的序号
+     */
+    public long thumb(Long userId, Long questionId) {
+        long result = redisTemplate.execute(RedisLuaScriptConstant.THUMB_SCRIPT_MQ, keys(userId), questionId, seqFloor());
+        if (result != LuaStatusEnum.FAIL.getValue()) {
+            cacheManager.invalidate(RedisKeyUtil.getUserThumbKey(userId), questionId.toString());
+        }
+        return result;
+    }
+
+    /**
+     * 原子检查并取消点赞
+     *
+     * @return -1 未点赞；正数为该用户本次事件的序号
+     */
+    public long unthumb(Long userId, Long questionId) {
+        long result = redisTemplate.execute(RedisLuaScriptConstant.UNTHUMB_SCRIPT_MQ, keys(userId), questionId, seqFloor());
+        if (result != LuaStatusEnum.FAIL.getValue()) {
+            cacheManager.invalidate(RedisKeyUtil.getUserThumbKey(userId), questionId.toString());
+        }
+        return result;
+    }
+
+    /**
+     * 直接设置点赞状态，用于事件发送失败后的回滚，不改变点赞数读模型
+     */
+    public void setThumb(Long userId, Long questionId, boolean thumbed) {
+        if (thumbed) {
+            cacheManager.put(RedisKeyUtil.getUserThumbKey(userId), questionId.toString(), 1);
+        } else {
+            cacheManager.evict(RedisKeyUtil.getUserThumbKey(userId), questionId.toString());
+        }
+    }
+
+    /**
+     * 经二级缓存读取，热点 (用户, 题目) 命中本地缓存
+     */
+    public boolean hasThumb(Long userId, Long questionId) {
+        return cacheManager.get(RedisKeyUtil.getUserThumbKey(userId), questionId.toString()) != null;
+    }
+
+    /**
+     * 单个用户批量判断，一次往返
+     */
+    public Map<Long, Boolean> hasThumbBatch(Long userId, Collection<Long> questionIds) {
+        List<Long> ids = new ArrayList<>(questionIds);
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Long questionId : ids) {
+            fields.add(questionId.toString());
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(RedisKeyUtil.getUserThumbKey(userId), fields);
+        Map<Long, Boolean> result = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            result.put(ids.get(i), values != null && values.get(i) != null);
+        }
+        return result;
+    }
+
+    /**
+     * 多个 (userId, questionId) 批量判断，一次 pipeline
+     *
+     * @return 与 pairs 顺序一致
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Boolean> hasThumbs(List<Pair<Long, Long>> pairs) {
+        List<Object> exists = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    public Object execute(RedisOperations operations) {
+                for (Pair<Long, Long> pair : pairs) {
+                    operations.opsForHash().hasKey(RedisKeyUtil.getUserThumbKey(pair.getLeft()), pair.getRight().toString());
+                }
+                return null;
+            }
+        });
+        List<Boolean> result = new ArrayList<>(pairs.size());
+        for (Object value : exists) {
+            result.add(Boolean.TRUE.equals(value));
+        }
+        return result;
+    }
+
+    /**
+     * 读取点赞状态并分配新的事件序号，在同一个脚本内完成，供重放、补偿事件使用。
+     * 之后的用户操作一定拿到更大的序号，消费端按序号窗口排序，旧状态不会覆盖新操作
+     *
+     * @param expected 与 pairs 顺序一致，状态等于期望值时才分配序号；为 null 时全部分配
+     * @return 与 pairs 顺序一致：左为是否已点赞，右为序号，未分配时为 null
+     */
+    public List<Pair<Boolean, Long>> snapshotWithSeq(List<Pair<Long, Long>> pairs, List<Boolean> expected) {
+        List<String> keys = new ArrayList<>(pairs.size() * 2);
+        List<Object> args = new ArrayList<>(pairs.size() * 2 + 1);
+        for (int i = 0; i < pairs.size(); i++) {
+            Long userId = pairs.get(i).getLeft();
+            keys.add(RedisKeyUtil.getUserThumbKey(userId));
+            keys.add(RedisKeyUtil.getUserThumbSeqKey(userId));
+            args.add(pairs.get(i).getRight());
+            args.add(expected == null ? -1 : (expected.get(i) ? 1 : 0));
+        }
+        args.add(seqFloor());
+        List<?> values = redisTemplate.execute(RedisLuaScriptConstant.SNAPSHOT_THUMB_STATE_SCRIPT, keys, args.toArray());
+        List<Pair<Boolean, Long>> result = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            long seq = ((Number) values.get(2 * i + 1)).longValue();
+            result.add(Pair.of(((Number) values.get(2 * i)).longValue() == 1, seq > 0 ? seq : null));
+        }
+        return result;
+    }
+
+    /**
+     * 多个用户点赞过的全部题目，一次 pipeline
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<Long, Set<Long>> getThumbQuestionIds(Collection<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        List<Object> fields = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    public Object execute(RedisOperations operations) {
+                for (Long userId : ids) {
+                    operations.opsForHash().keys(RedisKeyUtil.getUserThumbKey(userId));
+                }
+                return null;
+            }
+        });
+        Map<Long, Set<Long>> result = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            Set<Long> questionIds = new HashSet<>();
+            for (Object field : (Collection<Object>) fields.get(i)) {
+                questionIds.add(Long.valueOf(field.toString()));
+            }
+            result.put(ids.get(i), questionIds);
+        }
+        return result;
+    }
+
+    /**
+     * 事件序号键丢失时的起始序号：当前微秒时间戳，保证重建后的序号大于已落库的序号
+     */
+    static long seqFloor() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    private static List<String> keys(Long userId) {
+        return Arrays.asList(RedisKeyUtil.getUserThumbKey(userId),
+                RedisKeyUtil.getUserThumbSeqKey(userId),
+                ThumbConstant.QUESTION_THUMB_COUNT_KEY);
+    }
+}
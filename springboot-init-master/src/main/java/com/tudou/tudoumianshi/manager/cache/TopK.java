@@ -6,9 +6,49 @@ import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 public interface TopK {
+
+    /**
+     * 淘汰队列容量，队列满时丢弃新的淘汰事件
+     */
+    int EXPELLED_QUEUE_CAPACITY = 1024;
+
     AddResult add(String key, int increment);
     List<Item> list();
     BlockingQueue<Item> expelled();
     void fading();
     long total();
+
+    /**
+     * 汇总局部统计并发布热 key 快照，仅分片实现需要
+     */
+    default void merge() {
+    }
+
+    /**
+     * 草图中非空桶的占比，用于评估 width / depth 是否足够
+     */
+    default double loadFactor() {
+        return 0;
+    }
+
+    /**
+     * 累计晋升进 TopK 的 key 数
+     */
+    default long promotions() {
+        return 0;
+    }
+
+    /**
+     * 累计被挤出 TopK 的 key 数
+     */
+    default long demotions() {
+        return 0;
+    }
+
+    /**
+     * 淘汰队列已满而丢弃的事件数
+     */
+    default long expelledDropped() {
+        return 0;
+    }
 }
@@ -0,0 +1,18 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 用户信息变更事件（本节点修改或收到其他节点的失效广播）
+ */
+@Getter
+public class UserChangedEvent extends ApplicationEvent {
+
+    private final Long userId;
+
+    public UserChangedEvent(Object source, Long userId) {
+        super(source);
+        this.userId = userId;
+    }
+}
@@ -0,0 +1,103 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tudou.tudoumianshi.mapper.UserMapper;
+import com.tudou.tudoumianshi.model.entity.User;
+import com.tudou.tudoumianshi.model.vo.UserVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脱敏用户（UserVO）读穿缓存，供题目、题库等封装类填充创建人
+ * <p>
+ * 批量读取时未命中的 id 合并为一次 IN 查询；并发请求同一 id 时共享同一个加载中的 future，
+ * 不会重复查库。用户信息变更时按 UserChangedEvent 失效。返回缓存条目的副本，调用方修改不会污染缓存。
+ */
+@Component
+@Slf4j
+public class UserVOCacheManager {
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Value("${cache.user-vo.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${cache.user-vo.ttl:600}")
+    private long ttlSeconds;
+
+    /**
+     * userId -> UserVO，不存在的用户不缓存
+     */
+    private AsyncCache<Long, UserVO> userVOCache;
+
+    @PostConstruct
+    public void init() {
+        userVOCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .buildAsync();
+    }
+
+    /**
+     * 批量获取脱敏用户（副本），结果中不包含不存在的用户
+     */
+    public Map<Long, UserVO> getUserVOs(Collection<Long> userIds) {
+        List<Long> keys = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            if (userId != null && userId > 0) {
+                keys.add(userId);
+            }
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // 映射函数在调用线程中同步执行，只会收到当前没有在加载中的 id
+        Map<Long, UserVO> cached = userVOCache.getAll(keys,
+                (missingIds, executor) -> CompletableFuture.completedFuture(loadUserVOs(missingIds))).join();
+        Map<Long, UserVO> result = new HashMap<>(cached.size() * 2);
+        for (Map.Entry<Long, UserVO> entry : cached.entrySet()) {
+            UserVO userVO = new UserVO();
+            BeanUtils.copyProperties(entry.getValue(), userVO);
+            result.put(entry.getKey(), userVO);
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        // 加载中的 future 被移除后，其结果不会再写回缓存
+        userVOCache.synchronous().invalidate(event.getUserId());
+    }
+
+    private Map<Long, UserVO> loadUserVOs(Iterable<? extends Long> userIds) {
+        List<Long> ids = new ArrayList<>();
+        for (Long userId : userIds) {
+            ids.add(userId);
+        }
+        List<User> userList = userMapper.selectBatchIds(ids);
+        Map<Long, UserVO> result = new HashMap<>(userList.size() * 2);
+        for (User user : userList) {
+            UserVO userVO = new UserVO();
+            BeanUtils.copyProperties(user, userVO);
+            result.put(user.getId(), userVO);
+        }
+        log.debug("批量加载用户: 请求数={}, 命中数={}", ids.size(), result.size());
+        return result;
+    }
+}
@@ -6,6 +6,7 @@ import com.tudou.tudoumianshi.model.entity.Question;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +21,11 @@ public interface QuestionMapper extends BaseMapper<Question> {
     @Select("select * from question where updateTime >= #{minUpdateTime}")
     List<Question> listQuestionWithDelete(Date minUpdateTime);
 
+    /**
+     * 按 id 查询，包含已逻辑删除的题目
+     */
+    List<Question> listQuestionWithDeleteByIds(@Param("ids") Collection<Long> ids);
+
     void batchUpdateThumbCount(@Param("countMap") Map<Long, Long> countMap);
 
 }
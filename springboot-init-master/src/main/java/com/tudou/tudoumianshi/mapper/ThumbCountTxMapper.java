@@ -0,0 +1,26 @@
+package com.tudou.tudoumianshi.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 点赞数增量事务标记（thumb_count_tx）
+ */
+public interface ThumbCountTxMapper {
+
+    /**
+     * 在调用方事务中写入标记
+     */
+    @Insert("INSERT INTO thumb_count_tx (txId) VALUES (#{txId})")
+    int insertTx(@Param("txId") long txId);
+
+    /**
+     * 查询仍存在的标记，即已提交且尚未刷盘的增量
+     */
+    List<Long> listExistingTx(@Param("txIds") Collection<Long> txIds);
+
+    int deleteTx(@Param("txIds") Collection<Long> txIds);
+}
@@ -0,0 +1,29 @@
+package com.tudou.tudoumianshi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tudou.tudoumianshi.model.entity.ThumbEventWindow;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 点赞事件去重窗口，以下方法均须在落库事务中调用
+ */
+public interface ThumbEventWindowMapper extends BaseMapper<ThumbEventWindow> {
+
+    /**
+     * 为没有窗口的用户插入空窗口，之后的锁定只加记录锁，不加间隙锁
+     */
+    int insertIgnoreEmpty(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 查询并锁定用户的窗口
+     */
+    List<ThumbEventWindow> lockWindows(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 批量写回窗口
+     */
+    int updateWindows(@Param("windows") List<ThumbEventWindow> windows);
+}
@@ -2,6 +2,7 @@ package com.tudou.tudoumianshi.mapper;
 
 import com.tudou.tudoumianshi.model.entity.Thumb;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
@@ -21,8 +22,48 @@ public interface ThumbMapper extends BaseMapper<Thumb> {
      */
     @Select("SELECT userId FROM thumb WHERE questionId = #{questionId}")
     List<Long> getThumbUserIdsByQuestionId(Long questionId);
-}
 
+    /**
+     * 按主键游标分批查询点赞关系
+     * @param lastId 上一批最后一条的ID
+     * @param limit 批大小
+     * @return 点赞记录（仅 id、userId、questionId）
+     */
+    @Select("SELECT id, userId, questionId FROM thumb WHERE id > #{lastId} ORDER BY id LIMIT #{limit}")
+    List<Thumb> listThumbsAfterId(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 查询已存在的 (userId, questionId) 组合
+     * @param pairs 只需 userId、questionId
+     * @return 已存在的点赞记录（仅 userId、questionId）
+     */
+    List<Thumb> listExistingPairs(@Param("pairs") List<Thumb> pairs);
+
+    /**
+     * 查询并锁定已存在的 (userId, questionId) 组合，须在事务中调用
+     * @param pairs 只需 userId、questionId
+     * @return 已存在的点赞记录（仅 userId、questionId）
+     */
+    List<Thumb> lockExistingPairs(@Param("pairs") List<Thumb> pairs);
 
+    /**
+     * 按主键查询点赞关系
+     * @param ids 主键
+     * @return 点赞记录（仅 userId、questionId）
+     */
+    List<Thumb> listPairsByIds(@Param("ids") List<Long> ids);
 
+    /**
+     * 批量插入，唯一索引 idx_userId_questionId 冲突的行忽略
+     * @param thumbs 需带 id、userId、questionId
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("thumbs") List<Thumb> thumbs);
 
+    /**
+     * 按 (userId, questionId) 批量删除
+     * @param pairs 只需 userId、questionId
+     * @return 删除的行数
+     */
+    int deleteByPairs(@Param("pairs") List<Thumb> pairs);
+}
@@ -47,6 +47,11 @@ public class QuestionEsDTO implements Serializable {
      */
     private List<String> tags;
 
+    /**
+     * 所属题库 id 列表
+     */
+    private List<Long> questionBankId;
+
     /**
      * 创建用户 id
      */
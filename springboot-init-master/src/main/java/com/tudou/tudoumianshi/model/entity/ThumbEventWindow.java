@@ -0,0 +1,40 @@
+package com.tudou.tudoumianshi.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 点赞事件去重窗口
+ * @TableName thumb_event_window
+ */
+@TableName(value = "thumb_event_window")
+@Data
+public class ThumbEventWindow implements Serializable {
+
+    @TableId(type = IdType.INPUT)
+    private Long userId;
+
+    /**
+     * 不大于该序号的事件均已落库
+     */
+    private Long baseSeq;
+
+    /**
+     * 大于 baseSeq 的已落库事件：序号偏移:题目id，逗号分隔
+     */
+    private String applied;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,40 @@
+package com.tudou.tudoumianshi.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 题目索引版本状态视图
+ */
+@Data
+public class QuestionIndexStatusVO implements Serializable {
+
+    /**
+     * 所有版本索引，新版本在前
+     */
+    private List<String> versions;
+
+    /**
+     * question 别名当前指向的索引
+     */
+    private List<String> aliasIndices;
+
+    /**
+     * 正在回填、需要双写的索引
+     */
+    private String buildingIndex;
+
+    /**
+     * 是否有节点正在切换
+     */
+    private Boolean rolling;
+
+    /**
+     * 本节点最近一次切换失败原因
+     */
+    private String lastRolloverError;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,81 @@
+package com.tudou.tudoumianshi.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 点赞死信队列状态视图
+ */
+@Data
+public class ThumbDeadLetterVO implements Serializable {
+
+    /**
+     * 待重放的点赞关系数
+     */
+    private Long pendingDepth;
+
+    /**
+     * 累计毒消息数
+     */
+    private Long poisonTotal;
+
+    /**
+     * 是否有节点正在重放
+     */
+    private Boolean replaying;
+
+    /**
+     * 本节点累计重放数
+     */
+    private Long replayedTotal;
+
+    /**
+     * 本节点最近一次重放失败原因
+     */
+    private String lastReplayError;
+
+    /**
+     * 待重放样本（userId:questionId）
+     */
+    private List<String> pendingSamples;
+
+    /**
+     * 最近的毒消息样本
+     */
+    private List<Sample> poisonSamples;
+
+    private static final long serialVersionUID = 1L;
+
+    @Data
+    public static class Sample implements Serializable {
+
+        /**
+         * 死信消息 id
+         */
+        private String messageId;
+
+        /**
+         * 原始消息 id
+         */
+        private String originMessageId;
+
+        /**
+         * 判定为毒消息的原因
+         */
+        private String reason;
+
+        /**
+         * 原始消息体（Base64）
+         */
+        private String payload;
+
+        /**
+         * 进入死信队列的时间（epoch 毫秒）
+         */
+        private Long time;
+
+        private static final long serialVersionUID = 1L;
+    }
+}
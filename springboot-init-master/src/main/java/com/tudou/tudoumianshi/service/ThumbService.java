@@ -5,6 +5,8 @@ import com.tudou.tudoumianshi.model.dto.thumb.DoThumbRequest;
 import com.tudou.tudoumianshi.model.entity.Thumb;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * 点赞记录表服务
@@ -33,5 +35,13 @@ public interface ThumbService extends IService<Thumb> {
 
     Boolean hasThumb(Long questionId, Long userId);
 
+    /**
+     * 批量查询点赞状态，本地缓存未命中的部分合并为一次 Redis 查询
+     * @param userId 用户ID
+     * @param questionIds 题目ID集合
+     * @return 题目ID -> 是否点赞
+     */
+    Map<Long, Boolean> hasThumbBatch(Long userId, Collection<Long> questionIds);
+
 
 }
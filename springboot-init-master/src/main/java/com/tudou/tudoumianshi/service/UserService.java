@@ -10,6 +10,8 @@ import com.tudou.tudoumianshi.model.vo.UserVO;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 用户服务
@@ -105,6 +107,14 @@ public interface UserService extends IService<User> {
      */
     List<UserVO> getUserVO(List<User> userList);
 
+    /**
+     * 批量获取脱敏的用户信息（走本地缓存，未命中的合并为一次查询）
+     *
+     * @param userIds
+     * @return userId -> 用户，不包含不存在的用户
+     */
+    Map<Long, UserVO> getUserVOs(Set<Long> userIds);
+
     /**
      * 获取查询条件
      *
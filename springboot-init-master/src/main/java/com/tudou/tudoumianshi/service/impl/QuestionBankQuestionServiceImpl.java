@@ -130,11 +130,10 @@ public class QuestionBankQuestionServiceImpl extends ServiceImpl<QuestionBankQue
         // region 可选
         // 1. 关联查询用户信息
         Long userId = questionBankQuestion.getUserId();
-        User user = null;
+        UserVO userVO = null;
         if (userId != null && userId > 0) {
-            user = userService.getById(userId);
+            userVO = userService.getUserVOs(Collections.singleton(userId)).get(userId);
         }
-        UserVO userVO = userService.getUserVO(user);
         questionBankQuestionVO.setUser(userVO);
         // 2. 已登录，获取用户点赞、收藏状态
         long questionBankQuestionId = questionBankQuestion.getId();
@@ -173,8 +172,7 @@ public class QuestionBankQuestionServiceImpl extends ServiceImpl<QuestionBankQue
         // region 可选
         // 1. 关联查询用户信息
         Set<Long> userIdSet = questionBankQuestionList.stream().map(QuestionBankQuestion::getUserId).collect(Collectors.toSet());
-        Map<Long, List<User>> userIdUserListMap = userService.listByIds(userIdSet).stream()
-                .collect(Collectors.groupingBy(User::getId));
+        Map<Long, UserVO> userIdUserVOMap = userService.getUserVOs(userIdSet);
         // 2. 已登录，获取用户点赞、收藏状态
         User loginUser = userService.getLoginUserPermitNull(request);
         if (loginUser != null) {
@@ -186,14 +184,8 @@ public class QuestionBankQuestionServiceImpl extends ServiceImpl<QuestionBankQue
             QuestionBankQuestionVOQueryWrapper.eq("userId", loginUser.getId());
         }
         // 填充信息
-        QuestionBankQuestionVOList.forEach(QuestionBankQuestionVO -> {
-            Long userId = QuestionBankQuestionVO.getUserId();
-            User user = null;
-            if (userIdUserListMap.containsKey(userId)) {
-                user = userIdUserListMap.get(userId).get(0);
-            }
-            QuestionBankQuestionVO.setUser(userService.getUserVO(user));
-        });
+        QuestionBankQuestionVOList.forEach(QuestionBankQuestionVO ->
+                QuestionBankQuestionVO.setUser(userIdUserVOMap.get(QuestionBankQuestionVO.getUserId())));
         // endregion
 
         QuestionBankQuestionVOPage.setRecords(QuestionBankQuestionVOList);
@@ -10,7 +10,6 @@ import com.tudou.tudoumianshi.exception.ThrowUtils;
 import com.tudou.tudoumianshi.mapper.QuestionBankMapper;
 import com.tudou.tudoumianshi.model.dto.questionBank.QuestionBankQueryRequest;
 import com.tudou.tudoumianshi.model.entity.QuestionBank;
-import com.tudou.tudoumianshi.model.entity.User;
 import com.tudou.tudoumianshi.model.vo.QuestionBankVO;
 import com.tudou.tudoumianshi.model.vo.UserVO;
 import com.tudou.tudoumianshi.service.QuestionBankService;
@@ -23,6 +22,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -123,11 +123,10 @@ public class QuestionBankServiceImpl extends ServiceImpl<QuestionBankMapper, Que
         // region 可选
         // 1. 关联查询用户信息
         Long userId = questionBank.getUserId();
-        User user = null;
+        UserVO userVO = null;
         if (userId != null && userId > 0) {
-            user = userService.getById(userId);
+            userVO = userService.getUserVOs(Collections.singleton(userId)).get(userId);
         }
-        UserVO userVO = userService.getUserVO(user);
         questionBankVO.setUser(userVO);
         // endregion
 
@@ -156,17 +155,10 @@ public class QuestionBankServiceImpl extends ServiceImpl<QuestionBankMapper, Que
         // region 可选
         // 1. 关联查询用户信息
         Set<Long> userIdSet = questionBankList.stream().map(QuestionBank::getUserId).collect(Collectors.toSet());
-        Map<Long, List<User>> userIdUserListMap = userService.listByIds(userIdSet).stream()
-                .collect(Collectors.groupingBy(User::getId));
+        Map<Long, UserVO> userIdUserVOMap = userService.getUserVOs(userIdSet);
         // 填充信息
-        questionBankVOList.forEach(questionBankVO -> {
-            Long userId = questionBankVO.getUserId();
-            User user = null;
-            if (userIdUserListMap.containsKey(userId)) {
-                user = userIdUserListMap.get(userId).get(0);
-            }
-            questionBankVO.setUser(userService.getUserVO(user));
-        });
+        questionBankVOList.forEach(questionBankVO ->
+                questionBankVO.setUser(userIdUserVOMap.get(questionBankVO.getUserId())));
         // endregion
 
         questionBankVOPage.setRecords(questionBankVOList);
@@ -13,6 +13,8 @@ import com.tudou.tudoumianshi.constant.CommonConstant;
 import com.tudou.tudoumianshi.exception.BusinessException;
 import com.tudou.tudoumianshi.exception.ThrowUtils;
 import com.tudou.tudoumianshi.manager.AiManager;
+import com.tudou.tudoumianshi.manager.QuestionEsBulkIndexer;
+import com.tudou.tudoumianshi.manager.cache.QuestionThumbCountManager;
 import com.tudou.tudoumianshi.mapper.QuestionMapper;
 import com.tudou.tudoumianshi.model.dto.question.QuestionEsDTO;
 import com.tudou.tudoumianshi.model.dto.question.QuestionQueryRequest;
@@ -39,6 +41,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
@@ -65,6 +68,9 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
     @Resource
     private UserService userService;
 
+    @Resource
+    private QuestionThumbCountManager questionThumbCountManager;
+
     @Resource
     private QuestionBankQuestionService questionBankQuestionService;
 
@@ -157,14 +163,16 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
         // region 可选
         // 1. 关联查询用户信息
         Long userId = question.getUserId();
-        User user = null;
+        UserVO userVO = null;
         if (userId != null && userId > 0) {
-            user = userService.getById(userId);
+            userVO = userService.getUserVOs(Collections.singleton(userId)).get(userId);
         }
-        UserVO userVO = userService.getUserVO(user);
         Boolean exist = thumbService.hasThumb(question.getId(), loginUser.getId());
         questionVO.setHasThumb(exist);
         questionVO.setUser(userVO);
+        // 2. 实时点赞数
+        questionVO.setThumbCount(questionThumbCountManager.getThumbCounts(Collections.singletonList(question))
+                .get(question.getId()));
         // endregion
 
         return questionVO;
@@ -193,18 +201,23 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
         // region 可选
         // 1. 关联查询用户信息
         Set<Long> userIdSet = questionList.stream().map(Question::getUserId).collect(Collectors.toSet());
-        Map<Long, List<User>> userIdUserListMap = userService.listByIds(userIdSet).stream()
-                .collect(Collectors.groupingBy(User::getId));
+        Map<Long, UserVO> userIdUserVOMap = userService.getUserVOs(userIdSet);
 
         // 填充信息
-        questionVOList.forEach(questionVO -> {
-            Long userId = questionVO.getUserId();
-            User user = null;
-            if (userIdUserListMap.containsKey(userId)) {
-                user = userIdUserListMap.get(userId).get(0);
-            }
-            questionVO.setUser(userService.getUserVO(user));
-        });
+        questionVOList.forEach(questionVO ->
+                questionVO.setUser(userIdUserVOMap.get(questionVO.getUserId())));
+        // 2. 批量查询实时点赞数（一次 HMGET）
+        Map<Long, Integer> thumbCountMap = questionThumbCountManager.getThumbCounts(questionList);
+        questionVOList.forEach(questionVO ->
+                questionVO.setThumbCount(thumbCountMap.get(questionVO.getId())));
+        // 3. 批量查询当前登录用户的点赞状态（本地缓存 + 一次 HMGET）
+        User loginUser = userService.getLoginUserPermitNull(request);
+        if (loginUser != null) {
+            Set<Long> questionIdSet = questionList.stream().map(Question::getId).collect(Collectors.toSet());
+            Map<Long, Boolean> hasThumbMap = thumbService.hasThumbBatch(loginUser.getId(), questionIdSet);
+            questionVOList.forEach(questionVO ->
+                    questionVO.setHasThumb(hasThumbMap.getOrDefault(questionVO.getId(), false)));
+        }
         // endregion
 
         questionVOPage.setRecords(questionVOList);
@@ -304,7 +317,9 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
                 .withPageable(pageRequest)
                 .withSorts(sortBuilder)
                 .build();
-        SearchHits<QuestionEsDTO> searchHits = elasticsearchRestTemplate.search(searchQuery, QuestionEsDTO.class);
+        // 通过别名查询，索引切换时别名原子地指向完整的新索引
+        IndexCoordinates index = IndexCoordinates.of(QuestionEsBulkIndexer.QUESTION_ALIAS);
+        SearchHits<QuestionEsDTO> searchHits = elasticsearchRestTemplate.search(searchQuery, QuestionEsDTO.class, index);
         // 复用 MySQL 的分页对象，封装返回结果
         Page<Question> page = new Page<>();
         page.setTotal(searchHits.getTotalHits());
@@ -321,7 +336,7 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
                         resourceList.add(idPostMap.get(postId).get(0));
                     } else {
                         // 从 es 清空 db 已物理删除的数据
-                        String delete = elasticsearchRestTemplate.delete(String.valueOf(postId), QuestionEsDTO.class);
+                        String delete = elasticsearchRestTemplate.delete(String.valueOf(postId), index);
                         log.info("delete question {}", delete);
                     }
                 });
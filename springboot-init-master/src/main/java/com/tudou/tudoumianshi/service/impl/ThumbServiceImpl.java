@@ -4,7 +4,9 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tudou.tudoumianshi.common.ErrorCode;
 import com.tudou.tudoumianshi.constant.ThumbConstant;
 import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.manager.ThumbCountAggregator;
 import com.tudou.tudoumianshi.manager.cache.CacheManager;
+import com.tudou.tudoumianshi.manager.cache.ThumbBloomFilter;
 import com.tudou.tudoumianshi.manager.cache.ThumbCacheManager;
 import com.tudou.tudoumianshi.mapper.ThumbMapper;
 import com.tudou.tudoumianshi.model.dto.thumb.DoThumbRequest;
@@ -23,6 +25,11 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -46,9 +53,15 @@ public class ThumbServiceImpl extends ServiceImpl<ThumbMapper, Thumb> implements
     @Resource
     private ThumbCacheManager thumbCacheManager;
 
+    @Resource
+    private ThumbBloomFilter thumbBloomFilter;
+
     @Resource
     private QuestionService questionService;
 
+    @Resource
+    private ThumbCountAggregator thumbCountAggregator;
+
 
     private final TransactionTemplate transactionTemplate;
 
@@ -77,25 +90,26 @@ public class ThumbServiceImpl extends ServiceImpl<ThumbMapper, Thumb> implements
                     throw new BusinessException(ErrorCode.OPERATION_ERROR, "请勿重复点赞");
                 }
 
-                // 更新点赞数
-                boolean update = questionService.lambdaUpdate()
+                // 按主键查询题目是否存在，不锁 question 行
+                boolean questionExists = questionService.lambdaQuery()
                         .eq(Question::getId, questionId)
-                        .setSql("thumbCount = thumbCount + 1")
-                        .update();
+                        .count() > 0;
 
                 // 记录点赞关系
                 Thumb thumb = new Thumb();
                 thumb.setUserId(loginUser.getId());
                 thumb.setQuestionId(questionId);
-                boolean success = update && this.save(thumb);
+                boolean success = questionExists && this.save(thumb);
 
                 // 点赞记录存入 Redis
                 if (success) {
+                    // 点赞数由聚合器在事务提交后合并刷盘
+                    thumbCountAggregator.add(questionId, 1);
+                    thumbBloomFilter.put(loginUser.getId(), questionId);
                     String hashKey = ThumbConstant.USER_THUMB_KEY_PREFIX + loginUser.getId();
                     String fieldKey = questionId.toString();
                     Long realThumbId = thumb.getId();
-                    redisTemplate.opsForHash().put(hashKey, fieldKey, realThumbId);
-                    cacheManager.putIfPresent(hashKey, fieldKey, realThumbId);
+                    cacheManager.put(hashKey, fieldKey, realThumbId);
 
                     // 更新本地缓存中的点赞记录
                     thumbCacheManager.updateThumbCache(questionId, loginUser.getId(), true);
@@ -143,20 +157,14 @@ public class ThumbServiceImpl extends ServiceImpl<ThumbMapper, Thumb> implements
                     throw new RuntimeException("用户未点赞");
                 }
 
-                // 更新点赞数
-                boolean update = questionService.lambdaUpdate()
-                        .eq(Question::getId, questionId)
-                        .setSql("thumbCount = thumbCount - 1")
-                        .update();
-                // 原子操作：减少点赞数 + 删除记录
-                boolean success = update && this.removeById(thumbId);
+                boolean success = this.removeById(thumbId);
 
                 // 点赞记录从 Redis 删除
                 if (success) {
+                    thumbCountAggregator.add(questionId, -1);
                     String hashKey = ThumbConstant.USER_THUMB_KEY_PREFIX + loginUser.getId();
                     String fieldKey = questionId.toString();
-                    redisTemplate.opsForHash().delete(hashKey, fieldKey);
-                    cacheManager.putIfPresent(hashKey, fieldKey, ThumbConstant.UN_THUMB_CONSTANT);
+                    cacheManager.evict(hashKey, fieldKey);
 
                     // 更新本地缓存中的点赞记录
                     thumbCacheManager.updateThumbCache(questionId, loginUser.getId(), false);
@@ -189,21 +197,61 @@ public class ThumbServiceImpl extends ServiceImpl<ThumbMapper, Thumb> implements
             return cachedResult;
         }
 
-        // 2. 本地缓存未命中，再查Redis
+        // 2. 布隆过滤器判定一定未点赞，无需访问 Redis
+        if (!thumbBloomFilter.mightContain(userId, questionId)) {
+            return false;
+        }
+
+        // 3. 本地缓存未命中，再查Redis
         Object thumbIdObj = cacheManager.get(ThumbConstant.USER_THUMB_KEY_PREFIX + userId, questionId.toString());
+        thumbBloomFilter.recordOutcome(thumbIdObj != null);
         if (thumbIdObj == null) {
             // 尝试缓存该题目的点赞关系（如果是热点）
             thumbCacheManager.cacheThumbRelations(questionId);
             return false;
         }
 
-        // 3. Redis有数据，判断是否点赞
+        // 4. Redis有数据，判断是否点赞
         Long thumbId = (Long) thumbIdObj;
         boolean hasThumb = !thumbId.equals(ThumbConstant.UN_THUMB_CONSTANT);
 
-        // 4. 尝试缓存该题目的点赞关系（如果是热点）
+        // 5. 尝试缓存该题目的点赞关系（如果是热点）
         thumbCacheManager.cacheThumbRelations(questionId);
 
         return hasThumb;
     }
+
+    @Override
+    public Map<Long, Boolean> hasThumbBatch(Long userId, Collection<Long> questionIds) {
+        Map<Long, Boolean> result = new HashMap<>(questionIds.size() * 2);
+        List<Long> remaining = new ArrayList<>();
+        for (Long questionId : questionIds) {
+            // 1. 本地热点缓存、布隆过滤器能确定的直接返回
+            Boolean cachedResult = thumbCacheManager.hasThumbInCache(questionId, userId);
+            if (cachedResult != null) {
+                result.put(questionId, cachedResult);
+            } else if (!thumbBloomFilter.mightContain(userId, questionId)) {
+                result.put(questionId, false);
+            } else {
+                remaining.add(questionId);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return result;
+        }
+        // 2. 剩余部分一次 HMGET，值为点赞记录ID，UN_THUMB_CONSTANT 表示已取消
+        List<Object> fields = new ArrayList<>(remaining.size());
+        for (Long questionId : remaining) {
+            fields.add(questionId.toString());
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(ThumbConstant.USER_THUMB_KEY_PREFIX + userId, fields);
+        for (int i = 0; i < remaining.size(); i++) {
+            Object thumbId = values == null ? null : values.get(i);
+            boolean has = thumbId instanceof Number
+                    && ((Number) thumbId).longValue() != ThumbConstant.UN_THUMB_CONSTANT;
+            thumbBloomFilter.recordOutcome(has);
+            result.put(remaining.get(i), has);
+        }
+        return result;
+    }
 }
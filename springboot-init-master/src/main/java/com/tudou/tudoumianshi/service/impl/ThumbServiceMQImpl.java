@@ -1,9 +1,13 @@
 package com.tudou.tudoumianshi.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
+import com.tudou.tudoumianshi.exception.BusinessException;
 import com.tudou.tudoumianshi.listener.thumb.ThumbEvent;
+import com.tudou.tudoumianshi.manager.ThumbEventPublisher;
+import com.tudou.tudoumianshi.manager.cache.QuestionThumbCountManager;
+import com.tudou.tudoumianshi.manager.cache.ThumbBloomFilter;
 import com.tudou.tudoumianshi.manager.cache.ThumbCacheManager;
+import com.tudou.tudoumianshi.manager.cache.ThumbStateStore;
 import com.tudou.tudoumianshi.mapper.ThumbMapper;
 import com.tudou.tudoumianshi.model.dto.thumb.DoThumbRequest;
 import com.tudou.tudoumianshi.model.entity.Thumb;
@@ -11,22 +15,16 @@ import com.tudou.tudoumianshi.model.entity.User;
 import com.tudou.tudoumianshi.model.enums.LuaStatusEnum;
 import com.tudou.tudoumianshi.service.ThumbService;
 import com.tudou.tudoumianshi.service.UserService;
-import com.tudou.tudoumianshi.utils.RedisKeyUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pulsar.client.api.MessageId;
-import org.apache.pulsar.client.api.Producer;
-import org.apache.pulsar.client.api.PulsarClient;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Map;
 @Service("thumbService")
 @Slf4j
 public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
@@ -36,49 +34,19 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
     private UserService userService;
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private ThumbStateStore thumbStateStore;
 
     @Resource
     private ThumbCacheManager thumbCacheManager;
 
     @Resource
-    private PulsarClient pulsarClient;
+    private ThumbBloomFilter thumbBloomFilter;
 
-    private Producer<byte[]> thumbProducer;
-
-    private static final String THUMB_TOPIC = "thumb-topic";
-
-    /**
-     * 初始化Pulsar Producer
-     */
-    @PostConstruct
-    public void init() {
-        try {
-            if (pulsarClient != null) {
-                thumbProducer = pulsarClient.newProducer()
-                        .topic(THUMB_TOPIC)
-                        .create();
-                log.info("Pulsar点赞生产者初始化成功");
-            }
-        } catch (Exception e) {
-            log.error("Pulsar点赞生产者初始化失败", e);
-        }
-    }
+    @Resource
+    private ThumbEventPublisher thumbEventPublisher;
 
-    /**
-     * 关闭资源
-     */
-    @PreDestroy
-    public void destroy() {
-        try {
-            if (thumbProducer != null) {
-                thumbProducer.close();
-                log.info("Pulsar点赞生产者已关闭");
-            }
-        } catch (Exception e) {
-            log.error("关闭Pulsar生产者失败", e);
-        }
-    }
+    @Resource
+    private QuestionThumbCountManager questionThumbCountManager;
 
     @Override
     public Boolean doThumb(DoThumbRequest doThumbRequest, HttpServletRequest request) {
@@ -88,7 +56,6 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
         User loginUser = userService.getLoginUser(request);
         final Long loginUserId = loginUser.getId();
         final Long questionId = doThumbRequest.getQuestionId();
-        String userThumbKey = RedisKeyUtil.getUserThumbKey(loginUserId);
 
         // 本地缓存检查幂等：若已点赞，直接抛错
         Boolean localHas = thumbCacheManager.hasThumbInCache(questionId, loginUserId);
@@ -96,16 +63,11 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
             throw new RuntimeException("用户已点赞");
         }
 
-        // 明确List的类型以避免类型推断问题
-        List<String> keys = new ArrayList<String>();
-        keys.add(userThumbKey);
+        // 先写布隆过滤器，保证 Redis 写入后不会被判定为未点赞
+        thumbBloomFilter.put(loginUserId, questionId);
 
-        // 执行 Lua 脚本，点赞存入 Redis
-        long result = redisTemplate.execute(
-                RedisLuaScriptConstant.THUMB_SCRIPT_MQ,
-                keys,
-                questionId
-        );
+        // 原子检查并点赞，点赞存入 Redis
+        long result = thumbStateStore.thumb(loginUserId, questionId);
         if (LuaStatusEnum.FAIL.getValue() == result) {
             throw new RuntimeException("用户已点赞");
         }
@@ -118,36 +80,20 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
         thumbEvent.setQuestionId(questionId);
         thumbEvent.setUserId(loginUserId);
         thumbEvent.setType(ThumbEvent.EventType.INCR);
-        thumbEvent.setEventTime(LocalDateTime.now());
+        thumbEvent.setEventTime(System.currentTimeMillis());
+        thumbEvent.setSeq(result);
 
-        // 使用原生Pulsar API发送消息
-        if (thumbProducer != null) {
-            try {
-                // 将事件转换为JSON字符串
-                String eventJson = convertEventToJson(thumbEvent);
-                // 异步发送消息
-                CompletableFuture<MessageId> future = thumbProducer.sendAsync(eventJson.getBytes());
-
-                // 添加回调处理结果
-                future.whenComplete(new java.util.function.BiConsumer<MessageId, Throwable>() {
-                    @Override
-                    public void accept(MessageId messageId, Throwable throwable) {
-                        if (throwable != null) {
-                            // 发送失败，回滚Redis
-                            redisTemplate.opsForHash().delete(userThumbKey, questionId.toString());
-                            log.error("点赞事件发送失败: userId={}, questionId={}", loginUserId, questionId, throwable);
-                        } else {
-                            log.info("点赞事件发送成功: userId={}, questionId={}", loginUserId, questionId);
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                // 处理异常，回滚Redis状态
-                redisTemplate.opsForHash().delete(userThumbKey, questionId.toString());
-                log.error("点赞事件发送异常: userId={}, questionId={}", loginUserId, questionId, e);
-            }
-        } else {
-            log.warn("Pulsar生产者未初始化，无法发送点赞事件");
+        // 发送失败时回滚 Redis 与本地缓存
+        try {
+            thumbEventPublisher.publish(thumbEvent).whenComplete((messageId, throwable) -> {
+                if (throwable != null) {
+                    rollbackThumb(loginUserId, questionId);
+                    log.error("点赞事件发送失败: userId={}, questionId={}", loginUserId, questionId, throwable);
+                }
+            });
+        } catch (BusinessException e) {
+            rollbackThumb(loginUserId, questionId);
+            throw e;
         }
 
         return true;
@@ -161,18 +107,9 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
         User loginUser = userService.getLoginUser(request);
         final Long loginUserId = loginUser.getId();
         final Long questionId = doThumbRequest.getQuestionId();
-        String userThumbKey = RedisKeyUtil.getUserThumbKey(loginUserId);
 
-        // 明确List的类型以避免类型推断问题
-        List<String> keys = new ArrayList<String>();
-        keys.add(userThumbKey);
-
-        // 执行 Lua 脚本，点赞记录从 Redis 删除
-        long result = redisTemplate.execute(
-                RedisLuaScriptConstant.UNTHUMB_SCRIPT_MQ,
-                keys,
-                questionId
-        );
+        // 原子检查并取消点赞，点赞记录从 Redis 删除
+        long result = thumbStateStore.unthumb(loginUserId, questionId);
         if (LuaStatusEnum.FAIL.getValue() == result) {
             throw new RuntimeException("用户未点赞");
         }
@@ -185,53 +122,35 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
         thumbEvent.setQuestionId(questionId);
         thumbEvent.setUserId(loginUserId);
         thumbEvent.setType(ThumbEvent.EventType.DECR);
-        thumbEvent.setEventTime(LocalDateTime.now());
-
-        // 使用原生Pulsar API发送消息
-        if (thumbProducer != null) {
-            try {
-                // 将事件转换为JSON字符串
-                String eventJson = convertEventToJson(thumbEvent);
-                // 异步发送消息
-                CompletableFuture<MessageId> future = thumbProducer.sendAsync(eventJson.getBytes());
+        thumbEvent.setEventTime(System.currentTimeMillis());
+        thumbEvent.setSeq(result);
 
-                // 添加回调处理结果
-                future.whenComplete(new java.util.function.BiConsumer<MessageId, Throwable>() {
-                    @Override
-                    public void accept(MessageId messageId, Throwable throwable) {
-                        if (throwable != null) {
-                            // 发送失败，回滚Redis
-                            redisTemplate.opsForHash().put(userThumbKey, questionId.toString(), true);
-                            log.error("取消点赞事件发送失败: userId={}, questionId={}", loginUserId, questionId, throwable);
-                        } else {
-                            log.info("取消点赞事件发送成功: userId={}, questionId={}", loginUserId, questionId);
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                // 处理异常，回滚Redis状态
-                redisTemplate.opsForHash().put(userThumbKey, questionId.toString(), true);
-                log.error("取消点赞事件发送异常: userId={}, questionId={}", loginUserId, questionId, e);
-            }
-        } else {
-            log.warn("Pulsar生产者未初始化，无法发送取消点赞事件");
+        // 发送失败时恢复点赞记录
+        try {
+            thumbEventPublisher.publish(thumbEvent).whenComplete((messageId, throwable) -> {
+                if (throwable != null) {
+                    rollbackUndoThumb(loginUserId, questionId);
+                    log.error("取消点赞事件发送失败: userId={}, questionId={}", loginUserId, questionId, throwable);
+                }
+            });
+        } catch (BusinessException e) {
+            rollbackUndoThumb(loginUserId, questionId);
+            throw e;
         }
 
         return true;
     }
 
-    /**
-     * 将ThumbEvent转换为JSON字符串
-     */
-    private String convertEventToJson(ThumbEvent event) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"questionId\":").append(event.getQuestionId()).append(",");
-        sb.append("\"userId\":").append(event.getUserId()).append(",");
-        sb.append("\"type\":\"").append(event.getType()).append("\",");
-        sb.append("\"eventTime\":\"").append(event.getEventTime()).append("\"");
-        sb.append("}");
-        return sb.toString();
+    private void rollbackThumb(Long userId, Long questionId) {
+        thumbStateStore.setThumb(userId, questionId, false);
+        questionThumbCountManager.incrementIfPresent(questionId, -1);
+        thumbCacheManager.updateThumbCache(questionId, userId, false);
+    }
+
+    private void rollbackUndoThumb(Long userId, Long questionId) {
+        thumbStateStore.setThumb(userId, questionId, true);
+        questionThumbCountManager.incrementIfPresent(questionId, 1);
+        thumbCacheManager.updateThumbCache(questionId, userId, true);
     }
 
     @Override
@@ -247,11 +166,43 @@ public class ThumbServiceMQImpl extends ServiceImpl<ThumbMapper, Thumb>
         if (cached != null) {
             return cached;
         }
-        // 3. 回退到 Redis
-        boolean has = redisTemplate.opsForHash()
-                .hasKey(RedisKeyUtil.getUserThumbKey(userId), questionId.toString());
-        // 4. 更新本地缓存（如果已加载热点缓存）
+        // 3. 布隆过滤器判定一定未点赞，无需访问 Redis
+        if (!thumbBloomFilter.mightContain(userId, questionId)) {
+            return false;
+        }
+        // 4. 回退到二级缓存（热点 L1 + Redis）
+        boolean has = thumbStateStore.hasThumb(userId, questionId);
+        thumbBloomFilter.recordOutcome(has);
+        // 5. 更新本地缓存（如果已加载热点缓存）
         thumbCacheManager.updateThumbCache(questionId, userId, has);
         return has;
     }
+
+    @Override
+    public Map<Long, Boolean> hasThumbBatch(Long userId, Collection<Long> questionIds) {
+        Map<Long, Boolean> result = new HashMap<>(questionIds.size() * 2);
+        List<Long> remaining = new ArrayList<>();
+        for (Long questionId : questionIds) {
+            // 1. 本地热点缓存、布隆过滤器能确定的直接返回
+            Boolean cached = thumbCacheManager.hasThumbInCache(questionId, userId);
+            if (cached != null) {
+                result.put(questionId, cached);
+            } else if (!thumbBloomFilter.mightContain(userId, questionId)) {
+                result.put(questionId, false);
+            } else {
+                remaining.add(questionId);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return result;
+        }
+        // 2. 剩余部分一次往返批量查询
+        Map<Long, Boolean> stored = thumbStateStore.hasThumbBatch(userId, remaining);
+        for (Long questionId : remaining) {
+            boolean has = Boolean.TRUE.equals(stored.get(questionId));
+            thumbBloomFilter.recordOutcome(has);
+            result.put(questionId, has);
+        }
+        return result;
+    }
 }
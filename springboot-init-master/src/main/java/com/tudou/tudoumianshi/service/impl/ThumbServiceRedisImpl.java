@@ -1,7 +1,5 @@
 package com.tudou.tudoumianshi.service.impl;
 
-import cn.hutool.core.date.DateTime;
-import cn.hutool.core.date.DateUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tudou.tudoumianshi.constant.RedisLuaScriptConstant;
 import com.tudou.tudoumianshi.mapper.ThumbMapper;
@@ -17,7 +15,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 //@Service("thumbServiceRedis")
 @Slf4j
@@ -36,9 +40,9 @@ public class ThumbServiceRedisImpl extends ServiceImpl<ThumbMapper, Thumb> imple
         User loginUser = userService.getLoginUser(request);
         Long questionId = doThumbRequest.getQuestionId();
 
-        String timeSlice = getTimeSlice();
-        // Redis Key
-        String tempThumbKey = RedisKeyUtil.getTempThumbKey(timeSlice);
+        String timeSlice = RedisKeyUtil.getTempThumbTimeSlice(new Date());
+        // Redis Key，同一时间片按题目分片，避免单个大 hash
+        String tempThumbKey = RedisKeyUtil.getTempThumbKey(timeSlice, RedisKeyUtil.getTempThumbShard(questionId));
         String userThumbKey = RedisKeyUtil.getUserThumbKey(loginUser.getId());
 
         // 执行 Lua 脚本
@@ -66,9 +70,9 @@ public class ThumbServiceRedisImpl extends ServiceImpl<ThumbMapper, Thumb> imple
 
         Long questionId = doThumbRequest.getQuestionId();
         // 计算时间片
-        String timeSlice = getTimeSlice();
-        // Redis Key
-        String tempThumbKey = RedisKeyUtil.getTempThumbKey(timeSlice);
+        String timeSlice = RedisKeyUtil.getTempThumbTimeSlice(new Date());
+        // Redis Key，同一时间片按题目分片，避免单个大 hash
+        String tempThumbKey = RedisKeyUtil.getTempThumbKey(timeSlice, RedisKeyUtil.getTempThumbShard(questionId));
         String userThumbKey = RedisKeyUtil.getUserThumbKey(loginUser.getId());
 
         // 执行 Lua 脚本
@@ -85,14 +89,23 @@ public class ThumbServiceRedisImpl extends ServiceImpl<ThumbMapper, Thumb> imple
         return LuaStatusEnum.SUCCESS.getValue() == result;
     }
 
-    private String getTimeSlice() {
-        DateTime nowDate = DateUtil.date();
-        // 获取到当前时间前最近的整数秒，比如当前 11:20:23 ，获取到 11:20:20
-        return DateUtil.format(nowDate, "HH:mm:") + (DateUtil.second(nowDate) / 10) * 10;
-    }
-
     @Override
     public Boolean hasThumb(Long questionId, Long userId) {
         return redisTemplate.opsForHash().hasKey(RedisKeyUtil.getUserThumbKey(userId), questionId.toString());
     }
+
+    @Override
+    public Map<Long, Boolean> hasThumbBatch(Long userId, Collection<Long> questionIds) {
+        List<Long> ids = new ArrayList<>(questionIds);
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Long questionId : ids) {
+            fields.add(questionId.toString());
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(RedisKeyUtil.getUserThumbKey(userId), fields);
+        Map<Long, Boolean> result = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            result.put(ids.get(i), values != null && values.get(i) != null);
+        }
+        return result;
+    }
 }
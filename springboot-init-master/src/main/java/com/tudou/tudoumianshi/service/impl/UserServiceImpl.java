@@ -8,6 +8,8 @@ import com.tudou.tudoumianshi.common.ErrorCode;
 import com.tudou.tudoumianshi.constant.CommonConstant;
 import com.tudou.tudoumianshi.constant.RedisConstant;
 import com.tudou.tudoumianshi.exception.BusinessException;
+import com.tudou.tudoumianshi.manager.cache.LoginUserCacheManager;
+import com.tudou.tudoumianshi.manager.cache.UserVOCacheManager;
 import com.tudou.tudoumianshi.mapper.UserMapper;
 import com.tudou.tudoumianshi.model.dto.user.UserQueryRequest;
 import com.tudou.tudoumianshi.model.entity.User;
@@ -27,10 +29,14 @@ import org.springframework.util.DigestUtils;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.tudou.tudoumianshi.constant.UserConstant.USER_LOGIN_STATE;
@@ -45,6 +51,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private LoginUserCacheManager loginUserCacheManager;
+
+    @Resource
+    private UserVOCacheManager userVOCacheManager;
+
     /**
      * 盐值，混淆密码
      */
@@ -139,9 +151,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 //        if (currentUser == null || currentUser.getId() == null) {
 //            throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
 //        }
-        // 从数据库查询（追求性能的话可以注释，直接走缓存）
-//       long userId = currentUser.getId();
-        User currentUser = this.getById((String) loginUserId);
+        // 本地缓存 -> Sa-Token 会话 -> 数据库
+        User currentUser = loginUserCacheManager.getLoginUser(loginUserId);
         if (currentUser == null) {
             throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
         }
@@ -168,9 +179,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 //        if (currentUser == null || currentUser.getId() == null) {
 //            return null;
 //        }
-        // 从数据库查询（追求性能的话可以注释，直接走缓存）
-//        long userId = currentUser.getId();
-        return this.getById((String) loginUserId);
+        // 本地缓存 -> Sa-Token 会话 -> 数据库
+        return loginUserCacheManager.getLoginUser(loginUserId);
     }
 
     /**
@@ -202,8 +212,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Override
     public boolean userLogout(HttpServletRequest request) {
         StpUtil.checkLogin();
+        Long userId = StpUtil.getLoginIdAsLong();
         // 移除登录态
         StpUtil.logout();
+        loginUserCacheManager.invalidate(userId);
 //        if (request.getSession().getAttribute(USER_LOGIN_STATE) == null) {
 //            throw new BusinessException(ErrorCode.OPERATION_ERROR, "未登录");
 //        }
@@ -212,6 +224,27 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return true;
     }
 
+    /**
+     * 更新用户后刷新会话与各节点的登录用户缓存（修改信息、封号等）
+     */
+    @Override
+    public boolean updateById(User entity) {
+        boolean result = super.updateById(entity);
+        if (result && entity.getId() != null) {
+            loginUserCacheManager.refresh(entity.getId());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean result = super.removeById(id);
+        if (result) {
+            loginUserCacheManager.refresh(Long.valueOf(String.valueOf(id)));
+        }
+        return result;
+    }
+
     @Override
     public LoginUserVO getLoginUserVO(User user) {
         if (user == null) {
@@ -240,6 +273,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return userList.stream().map(this::getUserVO).collect(Collectors.toList());
     }
 
+    @Override
+    public Map<Long, UserVO> getUserVOs(Set<Long> userIds) {
+        if (CollUtil.isEmpty(userIds)) {
+            return new HashMap<>();
+        }
+        return userVOCacheManager.getUserVOs(userIds);
+    }
+
     @Override
     public QueryWrapper<User> getQueryWrapper(UserQueryRequest userQueryRequest) {
         if (userQueryRequest == null) {
@@ -1,8 +1,10 @@
 package com.tudou.tudoumianshi.utils;
 
 
+import cn.hutool.core.date.DateUtil;
 import com.tudou.tudoumianshi.constant.ThumbConstant;
 
+import java.util.Date;
 
 /**
  * @author pine
@@ -13,11 +15,40 @@ public class RedisKeyUtil {
         return ThumbConstant.USER_THUMB_KEY_PREFIX + userId;
     }
 
+    /**
+     * 获取 用户点赞事件序号 key
+     */
+    public static String getUserThumbSeqKey(Long userId) {
+        return ThumbConstant.USER_THUMB_SEQ_KEY_PREFIX + userId;
+    }
+
     /**
      * 获取 临时点赞记录 key
+     *
+     * @param timeSlice 时间片，见 {@link #getTempThumbTimeSlice(Date)}
+     * @param shard     分片，见 {@link #getTempThumbShard(Long)}
+     */
+    public static String getTempThumbKey(String timeSlice, int shard) {
+        return ThumbConstant.TEMP_THUMB_KEY_PREFIX + timeSlice + ":" + shard;
+    }
+
+    /**
+     * 获取 10 秒时间片，带日期，如 11:20:23 -> 20250418112020
      */
-    public static String getTempThumbKey(String time) {
-        return String.format(ThumbConstant.TEMP_THUMB_KEY_PREFIX, time);
+    public static String getTempThumbTimeSlice(Date date) {
+        return DateUtil.format(date, "yyyyMMddHHmm") + String.format("%02d", DateUtil.second(date) / 10 * 10);
+    }
+
+    /**
+     * 获取 正在落库的临时点赞记录 key
+     */
+    public static String getTempThumbProcessingKey(String tempThumbKey) {
+        return ThumbConstant.TEMP_THUMB_PROCESSING_KEY_PREFIX
+                + tempThumbKey.substring(ThumbConstant.TEMP_THUMB_KEY_PREFIX.length());
+    }
+
+    public static int getTempThumbShard(Long questionId) {
+        return (int) Math.floorMod(questionId, (long) ThumbConstant.TEMP_THUMB_SHARDS);
     }
 
 }
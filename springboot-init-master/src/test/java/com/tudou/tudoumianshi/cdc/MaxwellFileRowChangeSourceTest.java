@@ -0,0 +1,110 @@
+package com.tudou.tudoumianshi.cdc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Maxwell 文件变更来源：按 offset 续读、跳过非行变更与无法解析的行、不读取未写完的行
+ */
+class MaxwellFileRowChangeSourceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tailWithOffsets() throws IOException {
+        Path file = dir.resolve("binlog.json");
+        MaxwellFileRowChangeSource source = new MaxwellFileRowChangeSource(file, "tudouda");
+        assertTrue(source.poll(null, 10).getChanges().isEmpty());
+
+        append(file, "{\"database\":\"tudouda\",\"table\":\"question\",\"type\":\"insert\",\"ts\":1700000000,"
+                + "\"data\":{\"id\":1,\"title\":\"题目\",\"isDelete\":0}}\n"
+                + "{\"database\":\"tudouda\",\"table\":\"question\",\"type\":\"table-alter\",\"ts\":1700000001}\n"
+                + "{\"database\":\"other\",\"table\":\"question\",\"type\":\"insert\",\"ts\":1700000001,\"data\":{\"id\":9}}\n"
+                + "{\"database\":\"tudouda\",\"table\":\"question\",\"type\":\"update\",\"ts\":1700000002,"
+                + "\"data\":{\"id\":1,\"thumbCount\":3,\"updateTime\":\"2024-05-01 12:00:00\",\"tags\":null},"
+                + "\"old\":{\"thumbCount\":2,\"updateTime\":\"2024-05-01 11:00:00\"}}\n"
+                + "{\"database\":\"tudouda\",\"table\":\"thumb\",\"type\":\"delete\",\"ts\":17000");
+
+        List<RowChange> changes = source.poll(null, 10).getChanges();
+        assertEquals(2, changes.size());
+        RowChange insert = changes.get(0);
+        assertEquals(RowChange.Type.INSERT, insert.getType());
+        assertEquals(1700000000000L, insert.getTs());
+        assertEquals(1L, insert.getLong("id"));
+        RowChange update = changes.get(1);
+        assertTrue(update.onlyChanged(new HashSet<>(Arrays.asList("thumbCount", "updateTime"))));
+        assertFalse(update.onlyChanged(Collections.singleton("thumbCount")));
+        assertEquals(2L, update.getOldLong("thumbCount"));
+        assertEquals(1L, update.getOldLong("id"));
+        assertTrue(update.getData().containsKey("tags"));
+        assertNull(update.getData().get("tags"));
+
+        // 每条变更的 offset 可单独续读；最后一行未写完，写完后才读到
+        assertEquals(1, source.poll(insert.getOffset(), 10).getChanges().size());
+        assertTrue(source.poll(update.getOffset(), 10).getChanges().isEmpty());
+        append(file, "00,\"data\":{\"id\":5,\"userId\":2,\"questionId\":1}}\n");
+        List<RowChange> tail = source.poll(update.getOffset(), 10).getChanges();
+        assertEquals(1, tail.size());
+        assertEquals(RowChange.Type.DELETE, tail.get(0).getType());
+        assertEquals(2L, tail.get(0).getLong("userId"));
+        assertEquals(Files.size(file), Long.parseLong(tail.get(0).getOffset()));
+
+        // 限制条数
+        List<RowChange> first = source.poll(null, 1).getChanges();
+        assertEquals(1, first.size());
+        assertEquals(insert.getOffset(), first.get(0).getOffset());
+    }
+
+    @Test
+    void truncatedFileRestartsFromBeginning() throws IOException {
+        Path file = dir.resolve("binlog.json");
+        MaxwellFileRowChangeSource source = new MaxwellFileRowChangeSource(file, null);
+        append(file, "{\"database\":\"db\",\"table\":\"thumb\",\"type\":\"insert\",\"ts\":1,\"data\":{\"userId\":1,\"questionId\":2}}\n");
+        assertEquals(1, source.poll("100000", 10).getChanges().size());
+    }
+
+    @Test
+    void skipMalformedAndFilteredLines() throws IOException {
+        Path file = dir.resolve("binlog.json");
+        MaxwellFileRowChangeSource source = new MaxwellFileRowChangeSource(file, "tudouda");
+        append(file, "{\"database\":\"other\",\"table\":\"question\",\"type\":\"insert\",\"ts\":1,\"data\":{\"id\":9}}\n");
+        // 只有被过滤的行时也推进位置
+        RowChangeBatch filtered = source.poll(null, 10);
+        assertTrue(filtered.getChanges().isEmpty());
+        assertEquals(Files.size(file), Long.parseLong(filtered.getOffset()));
+
+        append(file, "{not json\n"
+                + "{\"database\":\"tudouda\",\"table\":\"question\",\"type\":\"insert\",\"ts\":1,\"data\":{\"id\":1}}\n");
+        RowChangeBatch batch = source.poll(filtered.getOffset(), 10);
+        assertEquals(1, batch.getMalformed().size());
+        assertEquals("{not json", batch.getMalformed().get(0).getRaw());
+        assertEquals(1, batch.getChanges().size());
+        assertEquals(Files.size(file), Long.parseLong(batch.getOffset()));
+
+        // 无法解析的行计入条数限制，单独跳过后从下一行续读
+        RowChangeBatch first = source.poll(filtered.getOffset(), 1);
+        assertEquals(1, first.getMalformed().size());
+        assertTrue(first.getChanges().isEmpty());
+        assertEquals(1, source.poll(first.getOffset(), 10).getChanges().size());
+    }
+
+    private static void append(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
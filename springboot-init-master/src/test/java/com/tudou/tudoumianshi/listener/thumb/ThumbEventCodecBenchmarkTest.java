@@ -0,0 +1,146 @@
+package com.tudou.tudoumianshi.listener.thumb;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 点赞事件编解码：二进制格式与原字符串拼接 + indexOf 解析的对比
+ * <p>
+ * 对比耗时的用例标记为 benchmark，默认构建不运行，使用 mvn test -P benchmark 运行，结果写入测试报告
+ */
+class ThumbEventCodecBenchmarkTest {
+
+    private static final int EVENTS = 1 << 12;
+    private static final int ROUNDS = 500;
+
+    @Test
+    void roundTrip() {
+        ThumbEvent event = new ThumbEvent(1843620051727400962L, 7L, ThumbEvent.EventType.DECR, 1700000000123L, 42L);
+        byte[] bytes = ThumbEventCodec.encode(event);
+        assertEquals(ThumbEventCodec.CURRENT_VERSION, bytes[0]);
+        assertEquals(event, ThumbEventCodec.decode(bytes));
+        assertEquals(event, ThumbEventSchema.INSTANCE.decode(ThumbEventSchema.INSTANCE.encode(event)));
+
+        // 截断、未知版本
+        assertThrows(IllegalArgumentException.class,
+                () -> ThumbEventCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> ThumbEventCodec.decode(new byte[]{9, 1, 1, 1}));
+    }
+
+    @Test
+    void decodeVersion1() {
+        // version | type | userId=300 | questionId=5 | eventTime=1
+        byte[] v1 = {ThumbEventCodec.VERSION_1, 1, (byte) 0xAC, 0x02, 0x05, 0, 0, 0, 0, 0, 0, 0, 1};
+        assertEquals(new ThumbEvent(300L, 5L, ThumbEvent.EventType.INCR, 1L, null), ThumbEventCodec.decode(v1));
+    }
+
+    @Test
+    void decodeLegacyJson() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 12, 30, 15);
+        ThumbEvent event = new ThumbEvent(2L, 3L, ThumbEvent.EventType.INCR,
+                time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), null);
+        byte[] legacy = legacyEncode(event.getUserId(), event.getQuestionId(), event.getType(), time)
+                .getBytes(StandardCharsets.UTF_8);
+        assertEquals(event, ThumbEventCodec.decode(legacy));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareWithStringPath(TestReporter reporter) {
+        SplittableRandom random = new SplittableRandom(42);
+        ThumbEvent[] events = new ThumbEvent[EVENTS];
+        LocalDateTime[] times = new LocalDateTime[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            long millis = 1700000000000L + random.nextInt(1_000_000_000);
+            events[i] = new ThumbEvent(1800000000000000000L + random.nextInt(1_000_000), (long) random.nextInt(100_000),
+                    random.nextBoolean() ? ThumbEvent.EventType.INCR : ThumbEvent.EventType.DECR, millis, (long) i + 1);
+            times[i] = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        }
+
+        // 预热
+        runBinary(events);
+        runString(events, times);
+
+        long binaryBytes = runBinary(events);
+        long stringBytes = runString(events, times);
+        long begin = System.nanoTime();
+        long checksum = runBinary(events);
+        long binaryNanos = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        checksum += runString(events, times);
+        long stringNanos = System.nanoTime() - begin;
+
+        long ops = (long) EVENTS * ROUNDS;
+        reporter.publishEntry("binary ns/op", String.format("%.1f", (double) binaryNanos / ops));
+        reporter.publishEntry("binary B/event", String.format("%.1f", (double) binaryBytes / ops));
+        reporter.publishEntry("string ns/op", String.format("%.1f", (double) stringNanos / ops));
+        reporter.publishEntry("string B/event", String.format("%.1f", (double) stringBytes / ops));
+        reporter.publishEntry("checksum", String.valueOf(checksum));
+        assertTrue(binaryBytes < stringBytes);
+    }
+
+    private long runBinary(ThumbEvent[] events) {
+        long bytes = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (ThumbEvent event : events) {
+                byte[] data = ThumbEventCodec.encode(event);
+                ThumbEvent decoded = ThumbEventCodec.decode(data);
+                bytes += data.length + ((decoded.getQuestionId() ^ decoded.getUserId()) & 1);
+            }
+        }
+        return bytes;
+    }
+
+    private long runString(ThumbEvent[] events, LocalDateTime[] times) {
+        long bytes = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < events.length; i++) {
+                ThumbEvent event = events[i];
+                byte[] data = legacyEncode(event.getUserId(), event.getQuestionId(), event.getType(), times[i]).getBytes();
+                bytes += data.length + (legacyDecode(new String(data)) & 1);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 原 ThumbServiceMQImpl.convertEventToJson
+     */
+    private static String legacyEncode(Long userId, Long questionId, ThumbEvent.EventType type, LocalDateTime eventTime) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"questionId\":").append(questionId).append(",");
+        sb.append("\"userId\":").append(userId).append(",");
+        sb.append("\"type\":\"").append(type).append("\",");
+        sb.append("\"eventTime\":\"").append(eventTime).append("\"");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * 原 ThumbConsumer.parseJsonToThumbEvent，返回各字段异或值避免被优化掉
+     */
+    private static long legacyDecode(String json) {
+        int questionIdStart = json.indexOf("\"questionId\":") + 13;
+        long questionId = Long.parseLong(json.substring(questionIdStart, json.indexOf(",", questionIdStart)));
+        int userIdStart = json.indexOf("\"userId\":") + 9;
+        long userId = Long.parseLong(json.substring(userIdStart, json.indexOf(",", userIdStart)));
+        int typeStart = json.indexOf("\"type\":\"") + 8;
+        ThumbEvent.EventType type = ThumbEvent.EventType.valueOf(json.substring(typeStart, json.indexOf("\"", typeStart)));
+        int timeStart = json.indexOf("\"eventTime\":\"") + 13;
+        LocalDateTime time = LocalDateTime.parse(json.substring(timeStart, json.indexOf("\"", timeStart)));
+        return questionId ^ userId ^ type.ordinal() ^ time.getNano();
+    }
+}
@@ -0,0 +1,60 @@
+package com.tudou.tudoumianshi.listener.thumb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 序号窗口：乱序到达的旧序号仍会处理，重复序号跳过，编码后可还原
+ */
+class ThumbSeqWindowTest {
+
+    @Test
+    void outOfOrderRedelivery() {
+        ThumbSeqWindow window = new ThumbSeqWindow(0);
+        assertEquals(ThumbSeqWindow.Result.APPLY, window.offer(1, 10, 1024));
+        // 2 丢失重投前 3 先落库
+        assertEquals(ThumbSeqWindow.Result.APPLY, window.offer(3, 20, 1024));
+        assertEquals(1, window.getBaseSeq());
+        assertEquals(ThumbSeqWindow.Result.APPLY, window.offer(2, 30, 1024));
+        assertEquals(3, window.getBaseSeq());
+        assertNull(window.encodeApplied());
+        assertEquals(ThumbSeqWindow.Result.DUPLICATE, window.offer(2, 30, 1024));
+        assertEquals(ThumbSeqWindow.Result.DUPLICATE, window.offer(3, 20, 1024));
+    }
+
+    @Test
+    void supersededBySameQuestion() {
+        ThumbSeqWindow window = new ThumbSeqWindow(5);
+        assertEquals(ThumbSeqWindow.Result.APPLY, window.offer(7, 10, 1024));
+        assertEquals(ThumbSeqWindow.Result.SUPERSEDED, window.offer(6, 10, 1024));
+        assertEquals(7, window.getBaseSeq());
+    }
+
+    @Test
+    void encodeRoundTrip() {
+        ThumbSeqWindow window = new ThumbSeqWindow(100);
+        assertFalse(window.isChanged());
+        window.offer(103, 1, 1024);
+        window.offer(105, 2, 1024);
+        assertEquals("3:1,5:2", window.encodeApplied());
+
+        ThumbSeqWindow decoded = ThumbSeqWindow.decode(window.getBaseSeq(), window.encodeApplied());
+        assertEquals(ThumbSeqWindow.Result.DUPLICATE, decoded.offer(105, 2, 1024));
+        assertEquals(ThumbSeqWindow.Result.APPLY, decoded.offer(101, 3, 1024));
+        assertEquals(ThumbSeqWindow.Result.APPLY, decoded.offer(102, 4, 1024));
+        assertEquals(103, decoded.getBaseSeq());
+    }
+
+    @Test
+    void slideWhenGapTooWide() {
+        ThumbSeqWindow window = new ThumbSeqWindow(0);
+        window.offer(2, 1, 4);
+        // 序号键重建后从时间戳起步，窗口整体前移
+        assertEquals(ThumbSeqWindow.Result.APPLY, window.offer(1_700_000_000_000_000L, 1, 4));
+        assertEquals(1_700_000_000_000_000L - 4, window.getBaseSeq());
+        assertEquals(ThumbSeqWindow.Result.DUPLICATE, window.offer(1, 1, 4));
+    }
+}
@@ -0,0 +1,72 @@
+package com.tudou.tudoumianshi.manager.cache;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TopK 多线程争用基准：模拟所有 Tomcat 线程同时访问同一批热点 key
+ * <p>
+ * 默认构建不运行，使用 mvn test -P benchmark 运行，吞吐量写入测试报告
+ */
+@Tag("benchmark")
+class TopKContentionBenchmarkTest {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int OPS_PER_THREAD = 200_000;
+    private static final int HOT_KEYS = 10;
+
+    @Test
+    void compareContention(TestReporter reporter) throws Exception {
+        // 预热一轮，避免 JIT 影响第一个实现
+        run("warmup", () -> new ConcurrentHeavyKeeper(100, 100000, 5, 0.92, 10));
+
+        long heavyKeeper = run("HeavyKeeper", () -> new HeavyKeeper(100, 100000, 5, 0.92, 10));
+        long concurrent = run("ConcurrentHeavyKeeper", () -> new ConcurrentHeavyKeeper(100, 100000, 5, 0.92, 10));
+        long striped = run("StripedTopK", () -> new StripedTopK(100, 100000, 5, 0.92, 10, 8));
+
+        reporter.publishEntry("threads", String.valueOf(THREADS));
+        reporter.publishEntry("HeavyKeeper ops/s", String.valueOf(heavyKeeper));
+        reporter.publishEntry("ConcurrentHeavyKeeper ops/s", String.valueOf(concurrent));
+        reporter.publishEntry("StripedTopK ops/s", String.valueOf(striped));
+    }
+
+    private long run(String name, Supplier<TopK> factory) throws Exception {
+        TopK topK = factory.get();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        // 80% 流量集中在少量热点 key 上
+                        int key = random.nextInt(10) < 8 ? random.nextInt(HOT_KEYS) : HOT_KEYS + random.nextInt(100_000);
+                        topK.add(String.valueOf(key), 1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        topK.merge();
+
+        // 所有实现都必须识别出热点 key
+        assertTrue(topK.add("0", 1).isHotKey(), name + " 未识别热点 key");
+        return (long) THREADS * OPS_PER_THREAD * 1_000_000_000L / elapsed;
+    }
+}